@@ -0,0 +1,96 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.tonicartos.widget.stickygridheaders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks grouping a simple adapter's header ids into sections, as done by
+ * generateHeaderList, and the incremental regroup done when a page of items is
+ * appended.
+ *
+ * @author Tonic Artos
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class SectionGroupingBenchmark {
+    private static final int PAGE_SIZE = 50;
+
+    @Param({
+            "10", "1000", "100000", "1000000"
+    })
+    public int numItems;
+
+    @Param({
+            "1", "100", "10000", "100000"
+    })
+    public int numSections;
+
+    @Param({
+            "UNIFORM", "SKEWED"
+    })
+    public SyntheticSections.Distribution distribution;
+
+    private StickyGridHeadersSectionGrouping mGrouping;
+
+    private long[] mHeaderIds;
+
+    @Setup
+    public void setUp() {
+        mHeaderIds = SyntheticSections.headerIds(SyntheticSections.counts(numItems, numSections,
+                distribution));
+        mGrouping = StickyGridHeadersSectionGrouping.group(mHeaderIds);
+    }
+
+    @Benchmark
+    public StickyGridHeadersSectionGrouping generateHeaderList() {
+        return StickyGridHeadersSectionGrouping.group(mHeaderIds);
+    }
+
+    /**
+     * Append a page of items to the last section, regrouping only that
+     * section as StickyGridHeadersSimpleAdapterWrapper does.
+     */
+    @Benchmark
+    public StickyGridHeadersSectionGrouping appendPage() {
+        int last = mGrouping.size() - 1;
+        long headerId = mGrouping.getHeaderId(last);
+        int start = mGrouping.getRefPosition(last);
+        int end = start + mGrouping.getCount(last) + PAGE_SIZE;
+
+        StickyGridHeadersSectionGrouping regrouped = new StickyGridHeadersSectionGrouping();
+        for (int i = start; i < end; i++) {
+            regrouped.appendRun(headerId, i);
+        }
+        return mGrouping.splice(last, last, regrouped, PAGE_SIZE);
+    }
+}
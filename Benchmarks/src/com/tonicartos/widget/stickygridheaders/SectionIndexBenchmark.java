@@ -0,0 +1,111 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.tonicartos.widget.stickygridheaders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building the padded section index and translating GridView
+ * positions through it.
+ *
+ * @author Tonic Artos
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class SectionIndexBenchmark {
+    private static final int NUM_POSITIONS = 1024;
+
+    @Param({
+            "10", "1000", "100000", "1000000"
+    })
+    public int numItems;
+
+    @Param({
+            "1", "100", "10000", "100000"
+    })
+    public int numSections;
+
+    @Param({
+            "1", "3", "12"
+    })
+    public int numColumns;
+
+    @Param({
+            "UNIFORM", "SKEWED"
+    })
+    public SyntheticSections.Distribution distribution;
+
+    private int[] mCounts;
+
+    private StickyGridHeadersSectionIndex mIndex;
+
+    private int mNext;
+
+    private int[] mPositions;
+
+    @Setup
+    public void setUp() {
+        mCounts = SyntheticSections.counts(numItems, numSections, distribution);
+        mIndex = new StickyGridHeadersSectionIndex(mCounts, numColumns);
+
+        Random random = new Random(42);
+        mPositions = new int[NUM_POSITIONS];
+        for (int i = 0; i < NUM_POSITIONS; i++) {
+            mPositions[i] = random.nextInt(mIndex.getCount());
+        }
+    }
+
+    /**
+     * Rebuild of the index, as done by getCount() after every data set or
+     * column change. The index does not modify the counts so they are shared.
+     */
+    @Benchmark
+    public int getCount() {
+        return new StickyGridHeadersSectionIndex(mCounts, numColumns).getCount();
+    }
+
+    @Benchmark
+    public long translatePosition() {
+        int position = mPositions[mNext++ & (NUM_POSITIONS - 1)];
+        return mIndex.translatePosition(position);
+    }
+
+    @Benchmark
+    public int unFilledSpacesInHeaderGroup() {
+        int unfilled = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            unfilled += StickyGridHeadersSectionIndex.unFilledSpaces(mCounts[i], numColumns);
+        }
+        return unfilled;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * Generates section sizes and header ids for benchmarks.
+ *
+ * @author Tonic Artos
+ */
+public final class SyntheticSections {
+    public enum Distribution {
+        /**
+         * Every section holds roughly the same number of items.
+         */
+        UNIFORM,
+
+        /**
+         * Section sizes fall off as 1/rank, so a few sections hold most items.
+         */
+        SKEWED
+    }
+
+    private SyntheticSections() {
+    }
+
+    /**
+     * @param numItems Total number of items.
+     * @param numSections Number of sections, capped at the number of items.
+     * @param distribution How items are spread over sections.
+     * @return Number of items in each section. Every section has at least one
+     *         item.
+     */
+    static int[] counts(int numItems, int numSections, Distribution distribution) {
+        numSections = Math.max(1, Math.min(numSections, numItems));
+        int[] counts = new int[numSections];
+        if (numItems == 0) {
+            return counts;
+        }
+
+        // Give every section one item, then share out the rest.
+        int remaining = numItems - numSections;
+        if (distribution == Distribution.UNIFORM) {
+            for (int i = 0; i < numSections; i++) {
+                counts[i] = 1 + remaining / numSections + (i < remaining % numSections ? 1 : 0);
+            }
+            return counts;
+        }
+
+        double harmonic = 0;
+        for (int i = 0; i < numSections; i++) {
+            harmonic += 1.0 / (i + 1);
+        }
+        int assigned = 0;
+        for (int i = 0; i < numSections; i++) {
+            int share = (int)(remaining / (harmonic * (i + 1)));
+            counts[i] = 1 + share;
+            assigned += share;
+        }
+        counts[0] += remaining - assigned;
+        return counts;
+    }
+
+    /**
+     * @param counts Number of items in each section.
+     * @return Header id of each item, with items of a section contiguous.
+     */
+    static long[] headerIds(int[] counts) {
+        int numItems = 0;
+        for (int count : counts) {
+            numItems += count;
+        }
+
+        long[] headerIds = new long[numItems];
+        int position = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // Spread ids out so they do not hash to neighbouring slots.
+            long headerId = i * 0x5DEECE66DL + 11;
+            for (int j = 0; j < counts[i]; j++) {
+                headerIds[position++] = headerId;
+            }
+        }
+        return headerIds;
+    }
+}
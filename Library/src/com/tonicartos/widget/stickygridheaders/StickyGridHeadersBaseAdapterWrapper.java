@@ -18,19 +18,39 @@ package com.tonicartos.widget.stickygridheaders;
 
 import android.content.Context;
 import android.database.DataSetObserver;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.FrameLayout;
+import android.widget.SectionIndexer;
+
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Adapter wrapper to insert extra views and otherwise hack around GridView to
  * add sections and headers.
+ * <p>
+ * The wrapper is a {@link SectionIndexer} over GridView positions so that fast
+ * scrolling lands on section headers. If the wrapped adapter is a
+ * SectionIndexer its sections are used, otherwise there is one section per
+ * header.
+ * </p>
  * 
  * @author Tonic Artos
  */
-public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
+public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter implements SectionIndexer {
+    /**
+     * Most positions or sections to look at for each view created ahead of
+     * time, to keep each idle slice short.
+     */
+    private static final int PREWARM_SCAN_LIMIT = 64;
+
     private static final int sNumViewTypes = 3;
 
     protected static final int ID_FILLER = -0x02;
@@ -39,11 +59,12 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
     protected static final int ID_HEADER_FILLER = -0x03;
 
-    protected static final int POSITION_FILLER = -0x01;
+    protected static final int POSITION_FILLER = StickyGridHeadersSectionIndex.POSITION_FILLER;
 
-    protected static final int POSITION_HEADER = -0x02;
+    protected static final int POSITION_HEADER = StickyGridHeadersSectionIndex.POSITION_HEADER;
 
-    protected static final int POSITION_HEADER_FILLER = -0x03;
+    protected static final int POSITION_HEADER_FILLER =
+            StickyGridHeadersSectionIndex.POSITION_HEADER_FILLER;
 
     protected static final int VIEW_TYPE_FILLER = 0x00;
 
@@ -57,15 +78,36 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
     private boolean mCounted = false;
 
+    private final StickyGridHeadersPagedAdapter.RangeObserver mRangeObserver =
+            new StickyGridHeadersPagedAdapter.RangeObserver() {
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    rebindItemRange(positionStart, itemCount);
+                }
+            };
+
     private DataSetObserver mDataSetObserver = new DataSetObserver() {
         @Override
         public void onChanged() {
-            updateCount();
+            if (mSectionExecutor == null) {
+                mSectionGeneration++;
+                if (hasStableSectionIds()) {
+                    updateWithDiff();
+                } else {
+                    updateCount();
+                    notifyDataSetChanged();
+                }
+            } else {
+                requestSectionIndex();
+            }
         }
 
         @Override
         public void onInvalidated() {
+            mSectionGeneration++;
             mCounted = false;
+            mSnapshot = null;
+            notifyDataSetInvalidated();
         }
     };
 
@@ -73,18 +115,98 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
     private StickyGridHeadersGridView mGridView;
 
+    private Handler mHandler;
+
+    /**
+     * Incremented whenever headers change, so header frames record when they
+     * were bound and frames bound before a change are rebound.
+     */
+    private int mHeaderBindGeneration;
+
+    /**
+     * Generation of the last change to every header, such as a data set
+     * change.
+     */
+    private int mHeadersChangedGeneration;
+
+    private int mHeaderBindsSkipped;
+
+    private int mHeaderRecycleHits;
+
+    /**
+     * Frame metrics to count work in, or null when nobody is listening.
+     */
+    private StickyGridHeadersFrameMetrics mMetrics;
+
+    private int mItemsRebound;
+
+    /**
+     * View type each item view was last bound as, if the wrapped adapter has
+     * more than one, so a view is only rebound in place for an item of the
+     * same type. Weak so views the grid drops can be collected.
+     */
+    private final WeakHashMap<View, Integer> mItemViewTypes = new WeakHashMap<View, Integer>();
+
+    private int mPayloadBinds;
+
+    private int mPrewarmedViewsUsed;
+
+    private int mPrewarmItemCursor;
+
+    private int mPrewarmSectionCursor;
+
+    /**
+     * Diff of the data set change being notified, so observers can carry
+     * state across it. Only set while observers are notified.
+     */
+    private StickyGridHeadersSectionDiff mLastDiff;
+
+    private int mHeaderRecycleMisses;
+
     private View mLastHeaderViewSeen;
 
     private View mLastViewSeen;
 
     private int mNumColumns = 1;
 
+    private Executor mSectionExecutor;
+
+    /**
+     * Incremented on every data set change so that results of superseded
+     * background index builds can be dropped.
+     */
+    private int mSectionGeneration;
+
+    /**
+     * Generation of the last change to single sections' headers since every
+     * header last changed, by section.
+     */
+    private final SparseIntArray mSectionHeaderGenerations = new SparseIntArray();
+
+    private StickyGridHeadersSectionIndex mSectionIndex;
+
+    /**
+     * Sections for fast scrolling, built on first use after each change.
+     */
+    private Object[] mSections;
+
+    /**
+     * Sections and showing items as of the last data set change, if the
+     * wrapped adapter has stable section and item ids.
+     */
+    private StickyGridHeadersSectionDiff.Snapshot mSnapshot;
+
+    private final StickyGridHeadersViewPool mViewPool = new StickyGridHeadersViewPool();
+
     public StickyGridHeadersBaseAdapterWrapper(Context context, StickyGridHeadersGridView gridView,
             StickyGridHeadersBaseAdapter delegate) {
         mContext = context;
         mDelegate = delegate;
         mGridView = gridView;
         delegate.registerDataSetObserver(mDataSetObserver);
+        if (delegate instanceof StickyGridHeadersPagedAdapter) {
+            ((StickyGridHeadersPagedAdapter<?>)delegate).setRangeObserver(mRangeObserver);
+        }
     }
 
     @Override
@@ -94,23 +216,9 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
     @Override
     public int getCount() {
-        if (mCounted) {
-            return mCount;
-        }
-        mCount = 0;
-        int numHeaders = mDelegate.getNumHeaders();
-        if (numHeaders == 0) {
-            mCount = mDelegate.getCount();
-            mCounted = true;
-            return mCount;
-        }
-
-        for (int i = 0; i < numHeaders; i++) {
-            // Pad count with space for header and trailing filler in header
-            // group.
-            mCount += mDelegate.getCountForHeader(i) + unFilledSpacesInHeaderGroup(i) + mNumColumns;
+        if (!mCounted) {
+            updateCount();
         }
-        mCounted = true;
         return mCount;
     }
 
@@ -128,69 +236,124 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
      */
     @Override
     public Object getItem(int position) throws ArrayIndexOutOfBoundsException {
-        Position adapterPosition = translatePosition(position);
-        if (adapterPosition.mPosition == POSITION_FILLER
-                || adapterPosition.mPosition == POSITION_HEADER) {
+        int adapterPosition = unpackPosition(translatePositionPacked(position));
+        if (adapterPosition == POSITION_FILLER || adapterPosition == POSITION_HEADER) {
             // Fake entry in view.
             return null;
         }
 
-        return mDelegate.getItem(adapterPosition.mPosition);
+        return mDelegate.getItem(adapterPosition);
     }
 
     @Override
     public long getItemId(int position) {
-        Position adapterPosition = translatePosition(position);
-        if (adapterPosition.mPosition == POSITION_HEADER) {
+        int adapterPosition = unpackPosition(translatePositionPacked(position));
+        if (adapterPosition == POSITION_HEADER) {
             return ID_HEADER;
         }
-        if (adapterPosition.mPosition == POSITION_FILLER) {
+        if (adapterPosition == POSITION_FILLER) {
             return ID_FILLER;
         }
-        if (adapterPosition.mPosition == POSITION_HEADER_FILLER) {
+        if (adapterPosition == POSITION_HEADER_FILLER) {
             return ID_HEADER_FILLER;
         }
-        return mDelegate.getItemId(adapterPosition.mPosition);
+        return mDelegate.getItemId(adapterPosition);
     }
 
     @Override
     public int getItemViewType(int position) {
-        Position adapterPosition = translatePosition(position);
-        if (adapterPosition.mPosition == POSITION_HEADER) {
-            return VIEW_TYPE_HEADER;
+        long translated = translatePositionPacked(position);
+        int adapterPosition = unpackPosition(translated);
+        if (adapterPosition == POSITION_HEADER) {
+            return getHeaderItemViewType(unpackHeader(translated));
         }
-        if (adapterPosition.mPosition == POSITION_FILLER) {
+        if (adapterPosition == POSITION_FILLER) {
             return VIEW_TYPE_FILLER;
         }
-        if (adapterPosition.mPosition == POSITION_HEADER_FILLER) {
+        if (adapterPosition == POSITION_HEADER_FILLER) {
             return VIEW_TYPE_HEADER_FILLER;
         }
-        int itemViewType = mDelegate.getItemViewType(adapterPosition.mPosition);
+        int itemViewType = mDelegate.getItemViewType(adapterPosition);
         if (itemViewType == IGNORE_ITEM_VIEW_TYPE) {
             return itemViewType;
         }
         return itemViewType + sNumViewTypes;
     }
 
+    @Override
+    public int getPositionForSection(int section) {
+        SectionIndexer indexer = getSectionIndexer();
+        if (indexer != null) {
+            int position = indexer.getPositionForSection(section);
+            return getGridPositionForFastScroll(position);
+        }
+
+        StickyGridHeadersSectionIndex index = getSectionIndex();
+        int numSections = index.getNumSections();
+        if (numSections == 0) {
+            return 0;
+        }
+        return index.getHeaderPosition(Math.max(Math.min(section, numSections - 1), 0));
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        SectionIndexer indexer = getSectionIndexer();
+        if (indexer != null) {
+            return indexer.getSectionForPosition(getItemForPosition(position));
+        }
+        return Math.max(getSectionIndex().getSectionForPosition(position), 0);
+    }
+
+    @Override
+    public Object[] getSections() {
+        SectionIndexer indexer = getSectionIndexer();
+        if (indexer != null) {
+            return indexer.getSections();
+        }
+
+        if (mSections == null) {
+            int numSections = getSectionIndex().getNumSections();
+            Object[] sections = new Object[numSections];
+            for (int i = 0; i < numSections; i++) {
+                sections[i] = Integer.toString(i + 1);
+            }
+            mSections = sections;
+        }
+        return mSections;
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
-        Position adapterPosition = translatePosition(position);
-        if (adapterPosition.mPosition == POSITION_HEADER) {
-            HeaderFillerView v = getHeaderFillerView(adapterPosition.mHeader, convertView, parent);
-            View view = mDelegate.getHeaderView(adapterPosition.mHeader, (View)v.getTag(), parent);
-            mGridView.detachHeader((View) v.getTag());
-            v.setTag(view);
-            mGridView.attachHeader(view);
+        if (convertView == null) {
+            convertView = mViewPool.take(getItemViewType(position));
+            if (convertView != null) {
+                mPrewarmedViewsUsed++;
+            }
+        }
+
+        long translated = translatePositionPacked(position);
+        int adapterPosition = unpackPosition(translated);
+        if (adapterPosition == POSITION_HEADER) {
+            int header = unpackHeader(translated);
+            HeaderFillerView v = getHeaderFillerView(header, convertView, parent);
+            if (v.isBoundTo(header, getHeaderChangedGeneration(header))) {
+                // Frame already shows this section and nothing has changed.
+                mHeaderBindsSkipped++;
+            } else {
+                bindHeader(v, header, parent);
+            }
             convertView = v;
             mLastHeaderViewSeen = v;
             v.forceLayout();
-        } else if (adapterPosition.mPosition == POSITION_HEADER_FILLER) {
+        } else if (adapterPosition == POSITION_HEADER_FILLER) {
             convertView = getFillerView(convertView, parent, mLastHeaderViewSeen);
             convertView.forceLayout();
-        } else if (adapterPosition.mPosition == POSITION_FILLER) {
+        } else if (adapterPosition == POSITION_FILLER) {
             convertView = getFillerView(convertView, parent, mLastViewSeen);
         } else {
-            convertView = mDelegate.getView(adapterPosition.mPosition, convertView, parent);
+            convertView = bindItem(adapterPosition, convertView, parent);
+            recordItemViewType(adapterPosition, convertView);
             mLastViewSeen = convertView;
         }
 
@@ -199,7 +362,7 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
     @Override
     public int getViewTypeCount() {
-        return mDelegate.getViewTypeCount() + sNumViewTypes;
+        return mDelegate.getViewTypeCount() + sNumViewTypes + getHeaderViewTypeCount() - 1;
     }
 
     /**
@@ -214,6 +377,16 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
         return mDelegate.hasStableIds();
     }
 
+    /**
+     * Rebind the header of a section in any visible header frames, for when
+     * the header's content changes without a data set change.
+     * 
+     * @param header Index of the section.
+     */
+    public void invalidateHeader(int header) {
+        updateHeaderFrames(header, null, null);
+    }
+
     @Override
     public boolean isEmpty() {
         return mDelegate.isEmpty();
@@ -221,34 +394,182 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
     @Override
     public boolean isEnabled(int position) {
-        Position adapterPosition = translatePosition(position);
-        if (adapterPosition.mPosition == POSITION_FILLER
-                || adapterPosition.mPosition == POSITION_HEADER) {
+        int adapterPosition = unpackPosition(translatePositionPacked(position));
+        if (adapterPosition == POSITION_FILLER || adapterPosition == POSITION_HEADER) {
             return false;
         }
 
-        return mDelegate.isEnabled(adapterPosition.mPosition);
+        return mDelegate.isEnabled(adapterPosition);
+    }
+
+    /**
+     * Compute sections on a background executor when the wrapped adapter
+     * changes. Until the new section index is ready the previous one is used,
+     * then it is swapped in and observers are notified once.
+     * 
+     * @param executor Executor to build sections on, or null to build them
+     *            synchronously on the UI thread.
+     */
+    public void setSectionExecutor(Executor executor) {
+        if (executor == mSectionExecutor) {
+            return;
+        }
+        mSectionExecutor = executor;
+        // Background builds do not diff.
+        mSnapshot = null;
+
+        boolean deferred = executor != null;
+        if (mDelegate instanceof StickyGridHeadersSimpleAdapterWrapper) {
+            ((StickyGridHeadersSimpleAdapterWrapper)mDelegate).setDeferRegroup(deferred);
+        }
+        if (!deferred) {
+            // Drop any background build in flight and catch up now.
+            mSectionGeneration++;
+            updateCount();
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Patch the header of a section in place, in the grid and if stickied.
+     * The adapter is given the payload if it implements
+     * {@link StickyGridHeadersPayloadAdapter}, otherwise the header is bound
+     * again. Nothing else is rebound and the grid is not laid out again.
+     * 
+     * @param header Index of the section.
+     * @param payload Description of the change, passed on to the adapter.
+     */
+    public void notifyHeaderChanged(int header, Object payload) {
+        StickyGridHeadersPayloadAdapter binder = getPayloadAdapter();
+        updateHeaderFrames(header, binder, payload);
+
+        if (mGridView.getStickiedSection() == header) {
+            long start = startBind();
+            if (binder != null
+                    && binder.bindHeaderPayload(header, mGridView.getStickiedHeader(), payload)) {
+                countHeaderBind(start, header);
+                mPayloadBinds++;
+                mGridView.refreshStickiedHeader();
+            } else {
+                mGridView.rebindStickiedHeader();
+            }
+        }
+    }
+
+    /**
+     * Patch the view of an item in place if it is showing. The adapter is
+     * given the payload if it implements
+     * {@link StickyGridHeadersPayloadAdapter}, otherwise the item is bound
+     * again. Nothing else is rebound and the grid is not laid out again.
+     * 
+     * @param position Position of the item within the wrapped adapter.
+     * @param payload Description of the change, passed on to the adapter, or
+     *            null to bind the item again.
+     */
+    public void notifyItemChanged(int position, Object payload) {
+        int gridPosition = getGridPosition(position);
+        int childIndex = gridPosition - mGridView.getFirstVisiblePosition();
+        if (gridPosition < 0 || childIndex < 0 || childIndex >= mGridView.getChildCount()) {
+            // Not showing, so it will be bound when it is.
+            return;
+        }
+
+        if (!rebindItem(position, mGridView.getChildAt(childIndex), payload)) {
+            // A replacement view can not be swapped in without a layout.
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        invalidateHeaders();
+        super.notifyDataSetChanged();
     }
 
     @Override
-    public void registerDataSetObserver(DataSetObserver observer) {
-        super.registerDataSetObserver(observer);
-        mDelegate.registerDataSetObserver(observer);
+    public void notifyDataSetInvalidated() {
+        invalidateHeaders();
+        super.notifyDataSetInvalidated();
     }
 
     public void setNumColumns(int numColumns) {
+        if (mNumColumns == numColumns) {
+            return;
+        }
         mNumColumns = numColumns;
+        if (mSectionExecutor != null && mCounted) {
+            // Reading the adapter now would show the new data set before
+            // observers are told of it, so lay out the sections the grid
+            // already knows about until the build in flight is published.
+            setSectionIndex(mSectionIndex.withNumColumns(numColumns), mCount);
+            return;
+        }
         mCounted = false;
         // notifyDataSetChanged();
     }
 
-    @Override
-    public void unregisterDataSetObserver(DataSetObserver observer) {
-        super.unregisterDataSetObserver(observer);
-        mDelegate.unregisterDataSetObserver(observer);
+    /**
+     * Bind a header into its frame, counting the bind in the frame metrics.
+     */
+    private void bindHeader(HeaderFillerView frame, int header, ViewGroup parent) {
+        long start = startBind();
+        View oldView = (View)frame.getTag();
+        if (oldView == null) {
+            mHeaderRecycleMisses++;
+        } else {
+            mHeaderRecycleHits++;
+        }
+        View view = mDelegate.getHeaderView(header, oldView, parent);
+        if (view != oldView) {
+            // Only cycle attachment when the header view was replaced.
+            mGridView.detachHeader(oldView);
+            frame.setTag(view);
+            mGridView.attachHeader(view);
+        }
+        frame.setHeaderId(header);
+        frame.setBindGeneration(mHeaderBindGeneration);
+        countHeaderBind(start, header);
+    }
+
+    /**
+     * Bind an item view, counting the bind in the frame metrics.
+     */
+    private View bindItem(int position, View convertView, ViewGroup parent) {
+        long start = startBind();
+        View view = mDelegate.getView(position, convertView, parent);
+        countItemBind(start);
+        return view;
+    }
+
+    /**
+     * @return Start time of a bind to pass to {@link #countItemBind(long)} or
+     *         {@link #countHeaderBind(long, int)}, or 0 if nothing is counted.
+     */
+    private long startBind() {
+        return mMetrics != null ? System.nanoTime() : 0;
+    }
+
+    private void countHeaderBind(long start, int header) {
+        StickyGridHeadersFrameMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.mHeaderBindNanos += System.nanoTime() - start;
+            metrics.mHeaderBinds++;
+            metrics.addSectionId(getReportedSectionId(header));
+        }
+    }
+
+    private void countItemBind(long start) {
+        StickyGridHeadersFrameMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.mItemBindNanos += System.nanoTime() - start;
+            metrics.mItemBinds++;
+        }
     }
 
     private FillerView getFillerView(View convertView, ViewGroup parent, View lastViewSeen) {
+        if (mMetrics != null) {
+            mMetrics.mFillerBinds++;
+        }
         FillerView fillerView = (FillerView)convertView;
         if (fillerView == null) {
             fillerView = new FillerView(mContext);
@@ -259,6 +580,64 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
         return fillerView;
     }
 
+    /**
+     * @return true if data set changes can be diffed against a snapshot of the
+     *         previous data set.
+     */
+    private boolean hasStableSectionIds() {
+        return hasSectionIds() && mDelegate.hasStableIds();
+    }
+
+    private StickyGridHeadersPayloadAdapter getPayloadAdapter() {
+        if (mDelegate instanceof StickyGridHeadersPayloadAdapter) {
+            return (StickyGridHeadersPayloadAdapter)mDelegate;
+        }
+        return null;
+    }
+
+    /**
+     * @return The wrapper view type of the given section's header frame.
+     */
+    private int getHeaderItemViewType(int header) {
+        return getHeaderFrameViewType(getHeaderViewType(header));
+    }
+
+    /**
+     * @return The wrapper view type of header frames for the given header view
+     *         type.
+     */
+    private int getHeaderFrameViewType(int headerViewType) {
+        if (headerViewType == 0) {
+            return VIEW_TYPE_HEADER;
+        }
+        // Further header types go after the item types so header frames are
+        // recycled separately for each type.
+        return sNumViewTypes + mDelegate.getViewTypeCount() + headerViewType - 1;
+    }
+
+    private int getHeaderViewType(int header) {
+        if (mDelegate instanceof StickyGridHeadersHeaderViewTypeAdapter) {
+            return ((StickyGridHeadersHeaderViewTypeAdapter)mDelegate).getHeaderViewType(header);
+        }
+        return 0;
+    }
+
+    private int getHeaderViewTypeCount() {
+        if (mDelegate instanceof StickyGridHeadersHeaderViewTypeAdapter) {
+            return Math.max(((StickyGridHeadersHeaderViewTypeAdapter)mDelegate)
+                    .getHeaderViewTypeCount(), 1);
+        }
+        return 1;
+    }
+
+    /**
+     * @return Generation of the last change to a section's header. Frames
+     *         bound before it are out of date.
+     */
+    private int getHeaderChangedGeneration(int header) {
+        return Math.max(mHeadersChangedGeneration, mSectionHeaderGenerations.get(header));
+    }
+
     private HeaderFillerView getHeaderFillerView(int headerPosition, View convertView,
             ViewGroup parent) {
         HeaderFillerView headerFillerView = (HeaderFillerView)convertView;
@@ -270,96 +649,779 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
     }
 
     /**
-     * Counts the number of items that would be need to fill out the last row in
-     * the group of items with the given header.
-     * 
-     * @param header Header set of items are grouped by.
-     * @return The count of unfilled spaces in the last row.
+     * @return true if the pool holds the given number of header frames for
+     *         every header view type.
      */
-    private int unFilledSpacesInHeaderGroup(int header) {
-        //If mNumColumns is equal to zero we will have a divide by 0 exception
-        if(mNumColumns == 0){
-            return 0;
+    private boolean isHeaderPoolFull(int headersPerType) {
+        for (int i = 0, n = getHeaderViewTypeCount(); i < n; i++) {
+            if (mViewPool.size(getHeaderFrameViewType(i)) < headersPerType) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        int remainder = mDelegate.getCountForHeader(header) % mNumColumns;
-        return remainder == 0 ? 0 : mNumColumns - remainder;
+    /**
+     * @return true if the pool holds the given number of views for every item
+     *         view type.
+     */
+    private boolean isItemPoolFull(int itemsPerType) {
+        for (int i = 0, n = mDelegate.getViewTypeCount(); i < n; i++) {
+            if (mViewPool.size(i + sNumViewTypes) < itemsPerType) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    protected long getHeaderId(int position) {
-        return translatePosition(position).mHeader;
+    private int[] readCounts() {
+        int numHeaders = mDelegate.getNumHeaders();
+        int[] counts = new int[numHeaders];
+        for (int i = 0; i < numHeaders; i++) {
+            counts[i] = mDelegate.getCountForHeader(i);
+        }
+        return counts;
     }
 
-    protected View getHeaderView(int position, View convertView, ViewGroup parent) {
-        if (mDelegate.getNumHeaders() == 0) {
-            return null;
+    /**
+     * Patch or bind again a showing item view in place. The view is patched
+     * with the payload if there is one and the adapter accepts it, otherwise
+     * it is bound again.
+     * 
+     * @param payload Description of the change, or null to bind again.
+     * @return false if the view could not be reused for the item, so the grid
+     *         must be laid out again.
+     */
+    private boolean rebindItem(int position, View view, Object payload) {
+        StickyGridHeadersPayloadAdapter binder = getPayloadAdapter();
+        long start = startBind();
+        if (payload != null && binder != null && binder.bindItemPayload(position, view, payload)) {
+            countItemBind(start);
+            mPayloadBinds++;
+            return true;
+        }
+        if (mDelegate.getViewTypeCount() > 1) {
+            Integer viewType = mItemViewTypes.get(view);
+            if (viewType == null || viewType.intValue() != mDelegate.getItemViewType(position)) {
+                // The view is of the wrong type for the item.
+                return false;
+            }
         }
+        if (bindItem(position, view, mGridView) == view) {
+            mItemsRebound++;
+            return true;
+        }
+        return false;
+    }
 
-        return mDelegate.getHeaderView(translatePosition(position).mHeader, convertView, parent);
+    /**
+     * Record the view type an item view was bound as, if the wrapped adapter
+     * has more than one.
+     */
+    private void recordItemViewType(int position, View view) {
+        if (mDelegate.getViewTypeCount() > 1) {
+            mItemViewTypes.put(view, mDelegate.getItemViewType(position));
+        }
     }
 
-    protected Position translatePosition(int position) {
-        int numHeaders = mDelegate.getNumHeaders();
-        if (numHeaders == 0) {
-            if (position >= mDelegate.getCount()) {
-                return new Position(POSITION_FILLER, 0);
+    /**
+     * Bind again the showing cells for a range of items, such as a page that
+     * has just loaded. Other cells are left alone.
+     */
+    private void rebindItemRange(int positionStart, int itemCount) {
+        int firstPosition = mGridView.getFirstVisiblePosition();
+        for (int i = 0, n = mGridView.getChildCount(); i < n; i++) {
+            int position = unpackPosition(translatePositionPacked(firstPosition + i));
+            if (position < positionStart || position >= positionStart + itemCount) {
+                continue;
+            }
+            if (!rebindItem(position, mGridView.getChildAt(i), null)) {
+                // A replacement view can not be swapped in without a layout.
+                notifyDataSetChanged();
+                return;
             }
-            return new Position(position, 0);
         }
+    }
 
-        // Translate GridView position to Adapter position.
-        int adapterPosition = position;
-        int place = position;
-        int i;
+    /**
+     * Rebind the visible cells whose item or section changed, for a change
+     * that left the layout as it was.
+     * 
+     * @return false if a cell could not be rebound in place, so the grid must
+     *         be laid out again.
+     */
+    private boolean rebindChangedViews(StickyGridHeadersSectionDiff diff) {
+        if (diff.hasChangedSections()) {
+            // Recycled frames for changed sections that are not showing must
+            // be bound again when they next are.
+            invalidateHeaders();
+        }
 
-        for (i = 0; i < numHeaders; i++) {
-            int sectionCount = mDelegate.getCountForHeader(i);
+        int firstPosition = mGridView.getFirstVisiblePosition();
+        for (int i = 0, n = mGridView.getChildCount(); i < n; i++) {
+            long translated = translatePositionPacked(firstPosition + i);
+            int adapterPosition = unpackPosition(translated);
+            if (adapterPosition == POSITION_HEADER) {
+                int header = unpackHeader(translated);
+                if (diff.isSectionChanged(header)) {
+                    rebindHeaderFrames(header, null, null);
+                }
+            } else if (adapterPosition >= 0 && diff.isItemChanged(adapterPosition)
+                    && !rebindItem(adapterPosition, mGridView.getChildAt(i), null)) {
+                return false;
+            }
+        }
+
+        int stickiedSection = mGridView.getStickiedSection();
+        if (stickiedSection >= 0 && diff.isSectionChanged(stickiedSection)) {
+            mGridView.rebindStickiedHeader();
+        }
+        mGridView.invalidate();
+        return true;
+    }
+
+    /**
+     * Swap in a section index built in the background, unless the data set has
+     * changed again since it was requested.
+     */
+    private void publishSectionIndex(int generation,
+            StickyGridHeadersSimpleAdapterWrapper grouper, StickyGridHeadersSectionGrouping headers,
+            StickyGridHeadersSectionIndex index, int count) {
+        if (generation != mSectionGeneration) {
+            return;
+        }
+
+        if (grouper != null) {
+            grouper.setHeaders(headers);
+        }
+        // The column count may have changed while the index was being built.
+        setSectionIndex(index.withNumColumns(mNumColumns), count);
+        mCounted = true;
+        notifyDataSetChanged();
+    }
 
-            // Skip past fake items making space for header in front of
-            // sections.
-            if (place == 0) {
-                // Position is first column where header will be.
-                return new Position(POSITION_HEADER, i);
+    /**
+     * @param count Number of items in the wrapped adapter, used as the count
+     *            if there are no sections.
+     */
+    private void setSectionIndex(StickyGridHeadersSectionIndex index, int count) {
+        mSectionIndex = index;
+        mSections = null;
+        if (index.getNumSections() == 0) {
+            mCount = count;
+        } else {
+            mCount = index.getCount();
+        }
+    }
+
+    /**
+     * Snapshot the wrapped adapter and build the new section index on the
+     * section executor.
+     */
+    private void requestSectionIndex() {
+        final int generation = ++mSectionGeneration;
+        final int numColumns = mNumColumns;
+        final int count = mDelegate.getCount();
+
+        final StickyGridHeadersSimpleAdapterWrapper grouper;
+        final long[] headerIds;
+        final int[] counts;
+        if (mDelegate instanceof StickyGridHeadersSimpleAdapterWrapper
+                && ((StickyGridHeadersSimpleAdapterWrapper)mDelegate).isRegroupPending()) {
+            grouper = (StickyGridHeadersSimpleAdapterWrapper)mDelegate;
+            headerIds = grouper.snapshotHeaderIds();
+            counts = null;
+        } else {
+            grouper = null;
+            headerIds = null;
+            counts = readCounts();
+        }
+
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        mSectionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StickyGridHeadersSectionGrouping headers = null;
+                int[] sectionCounts = counts;
+                if (grouper != null) {
+                    headers = grouper.generateHeaderList(headerIds);
+                    sectionCounts = headers.copyCounts();
+                }
+
+                final StickyGridHeadersSectionGrouping groupedHeaders = headers;
+                final StickyGridHeadersSectionIndex index = new StickyGridHeadersSectionIndex(
+                        sectionCounts, numColumns);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishSectionIndex(generation, grouper, groupedHeaders, index, count);
+                    }
+                });
             }
-            place -= mNumColumns;
-            if (place < 0) {
-                // Position is a fake so return null.
-                return new Position(POSITION_HEADER_FILLER, i);
+        });
+    }
+
+    private StickyGridHeadersSectionDiff.Snapshot takeSnapshot(int[] counts) {
+        StickyGridHeadersStableSectionIdAdapter sectionIdAdapter =
+                (StickyGridHeadersStableSectionIdAdapter)mDelegate;
+        long[] sectionIds = new long[counts.length];
+        for (int i = 0; i < sectionIds.length; i++) {
+            sectionIds[i] = sectionIdAdapter.getSectionId(i);
+        }
+
+        // Reading every item id would make each change cost O(n) on the UI
+        // thread, so only the ids of the showing items are read.
+        int count = mDelegate.getCount();
+        int firstPosition = mGridView.getFirstVisiblePosition();
+        int firstItem = 0;
+        int lastItem = -1;
+        for (int i = 0, n = mGridView.getChildCount(); i < n; i++) {
+            int position = getAdapterPosition(firstPosition + i);
+            if (position < 0 || position >= count) {
+                continue;
             }
-            adapterPosition -= mNumColumns;
+            if (lastItem < 0) {
+                firstItem = position;
+            }
+            lastItem = position;
+        }
+        long[] itemIds = new long[lastItem - firstItem + 1];
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = mDelegate.getItemId(firstItem + i);
+        }
+        return new StickyGridHeadersSectionDiff.Snapshot(counts, sectionIds, firstItem, itemIds);
+    }
 
-            if (place < sectionCount) {
-                return new Position(adapterPosition, i);
+    /**
+     * Update the visible frames showing a section's header, with a payload if
+     * a binder is given and accepts it, otherwise by binding again.
+     */
+    private void updateHeaderFrames(int header, StickyGridHeadersPayloadAdapter binder,
+            Object payload) {
+        // Recycled frames are out of reach, so have frames for the section
+        // bound again when they are next shown.
+        mSectionHeaderGenerations.put(header, ++mHeaderBindGeneration);
+        rebindHeaderFrames(header, binder, payload);
+        mGridView.invalidate();
+    }
+
+    /**
+     * Update the visible frames showing a section's header for the current
+     * bind generation.
+     */
+    private void rebindHeaderFrames(int header, StickyGridHeadersPayloadAdapter binder,
+            Object payload) {
+        for (int i = 0, n = mGridView.getChildCount(); i < n; i++) {
+            View child = mGridView.getChildAt(i);
+            if (!(child instanceof HeaderFillerView)
+                    || ((HeaderFillerView)child).getHeaderId() != header) {
+                continue;
             }
 
-            // Skip past section end of section row filler;
-            int filler = unFilledSpacesInHeaderGroup(i);
-            adapterPosition -= filler;
-            place -= sectionCount + filler;
+            HeaderFillerView frame = (HeaderFillerView)child;
+            View view = (View)frame.getTag();
+            long start = startBind();
+            if (binder != null && view != null
+                    && binder.bindHeaderPayload(header, view, payload)) {
+                frame.setBindGeneration(mHeaderBindGeneration);
+                countHeaderBind(start, header);
+                mPayloadBinds++;
+            } else {
+                bindHeader(frame, header, mGridView);
+                frame.requestLayout();
+            }
+        }
+    }
+
+    /**
+     * Diff the wrapped adapter against the last snapshot. If the layout is
+     * unchanged only the changed cells are rebound, otherwise observers are
+     * notified with the diff available from {@link #remapSection(int)}.
+     */
+    private void updateWithDiff() {
+        StickyGridHeadersSectionDiff.Snapshot previous = mSnapshot;
+        mSnapshot = null;
+        updateCount();
+        if (previous == null) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        StickyGridHeadersSectionDiff diff = new StickyGridHeadersSectionDiff(previous, mSnapshot);
+        if (diff.isLayoutUnchanged() && rebindChangedViews(diff)) {
+            return;
+        }
+
+        mLastDiff = diff;
+        try {
+            notifyDataSetChanged();
+        } finally {
+            mLastDiff = null;
+        }
+    }
+
+    /**
+     * Map an item position from the wrapped adapter's SectionIndexer to a
+     * GridView position, using the header if the item starts its section.
+     */
+    private int getGridPositionForFastScroll(int position) {
+        StickyGridHeadersSectionIndex index = getSectionIndex();
+        int section = index.getSectionForItemPosition(position);
+        if (section < 0) {
+            return Math.max(Math.min(position, getCount() - 1), 0);
+        }
+        if (index.getItemPosition(section) == position) {
+            return index.getHeaderPosition(section);
+        }
+        return index.getGridPosition(position);
+    }
+
+    /**
+     * Map a GridView position to the nearest item in the wrapped adapter.
+     * Headers map to the first item in their section and fillers to the last.
+     */
+    private int getItemForPosition(int position) {
+        if (getSectionIndex().getNumSections() == 0) {
+            return Math.max(Math.min(position, mDelegate.getCount() - 1), 0);
+        }
 
-            if (place < 0) {
-                // Position is a fake so return null.
-                return new Position(POSITION_FILLER, i);
+        long translated = translatePositionPacked(position);
+        int adapterPosition = unpackPosition(translated);
+        if (adapterPosition >= 0) {
+            return adapterPosition;
+        }
+
+        int section = unpackHeader(translated);
+        int item = mSectionIndex.getItemPosition(section);
+        if (adapterPosition == POSITION_FILLER) {
+            item += mSectionIndex.getCountForSection(section) - 1;
+        }
+        return Math.max(Math.min(item, mDelegate.getCount() - 1), 0);
+    }
+
+    /**
+     * @return The SectionIndexer of the adapter set on the grid, looking
+     *         through the library's own wrappers, or null if there is none.
+     */
+    private SectionIndexer getSectionIndexer() {
+        Object adapter = mDelegate;
+        if (adapter instanceof StickyGridHeadersSimpleAdapterWrapper) {
+            adapter = ((StickyGridHeadersSimpleAdapterWrapper)adapter).getWrappedAdapter();
+        } else if (adapter instanceof StickyGridHeadersListAdapterWrapper) {
+            adapter = ((StickyGridHeadersListAdapterWrapper)adapter).getWrappedAdapter();
+        }
+        if (adapter instanceof SectionIndexer) {
+            return (SectionIndexer)adapter;
+        }
+        return null;
+    }
+
+    /**
+     * Get the section index for the current data set and column count,
+     * rebuilding it if it has gone stale.
+     */
+    private StickyGridHeadersSectionIndex getSectionIndex() {
+        if (!mCounted) {
+            updateCount();
+        }
+        return mSectionIndex;
+    }
+
+    /**
+     * Find the header frames that lie within a range of GridView positions.
+     * 
+     * @param firstPosition First GridView position in the range.
+     * @param lastPosition Last GridView position in the range, inclusive.
+     * @param out Receives the offset of each header frame from firstPosition.
+     * @return Number of offsets written to out.
+     */
+    int findHeaderPositions(int firstPosition, int lastPosition, int[] out) {
+        StickyGridHeadersSectionIndex index = getSectionIndex();
+        int numSections = index.getNumSections();
+        if (numSections == 0 || lastPosition < firstPosition) {
+            return 0;
+        }
+
+        int section = index.getSectionForPosition(firstPosition);
+        if (index.getHeaderPosition(section) < firstPosition) {
+            section++;
+        }
+
+        int found = 0;
+        for (; section < numSections && found < out.length; section++) {
+            int headerPosition = index.getHeaderPosition(section);
+            if (headerPosition > lastPosition) {
+                break;
             }
+            out[found++] = headerPosition - firstPosition;
         }
+        return found;
+    }
 
-        // Position is a fake.
-        return new Position(POSITION_FILLER, i);
+    /**
+     * @param section Index of a section.
+     * @return GridView position of the section's header, or -1 if there is no
+     *         such section.
+     */
+    int getHeaderPosition(int section) {
+        StickyGridHeadersSectionIndex index = getSectionIndex();
+        if (section < 0 || section >= index.getNumSections()) {
+            return -1;
+        }
+        return index.getHeaderPosition(section);
     }
 
-    protected void updateCount() {
-        mCount = 0;
+    /**
+     * @return Number of header binds skipped because the frame already showed
+     *         the section.
+     */
+    int getHeaderBindsSkipped() {
+        return mHeaderBindsSkipped;
+    }
+
+    /**
+     * Have every header frame bound again when it is next shown.
+     */
+    void invalidateHeaders() {
+        mHeadersChangedGeneration = ++mHeaderBindGeneration;
+        mSectionHeaderGenerations.clear();
+    }
+
+    /**
+     * @return Number of items rebound in place after a data set change that
+     *         did not change the layout.
+     */
+    int getItemsRebound() {
+        return mItemsRebound;
+    }
+
+    /**
+     * @return Number of views created ahead of time that have been used.
+     */
+    int getPrewarmedViewsUsed() {
+        return mPrewarmedViewsUsed;
+    }
+
+    /**
+     * Create one view ahead of time, if the pool is short of one. Items and
+     * headers are created for the first positions and sections found with
+     * each view type.
+     * 
+     * @param itemsPerType Number of views to pool for each item view type.
+     * @param headersPerType Number of header frames to pool for each header
+     *            view type.
+     * @param fillersPerType Number of views to pool for each filler type.
+     * @return true if there is more to do.
+     */
+    boolean prewarmNext(int itemsPerType, int headersPerType, int fillersPerType) {
+        if (mViewPool.size(VIEW_TYPE_FILLER) < fillersPerType) {
+            mViewPool.put(VIEW_TYPE_FILLER, new FillerView(mContext));
+            return true;
+        }
+        if (mViewPool.size(VIEW_TYPE_HEADER_FILLER) < fillersPerType) {
+            mViewPool.put(VIEW_TYPE_HEADER_FILLER, new FillerView(mContext));
+            return true;
+        }
+
         int numHeaders = mDelegate.getNumHeaders();
-        if (numHeaders == 0) {
-            mCount = mDelegate.getCount();
-            mCounted = true;
-            return;
+        if (mPrewarmSectionCursor < numHeaders && isHeaderPoolFull(headersPerType)) {
+            // No need to look at the rest of the sections.
+            mPrewarmSectionCursor = numHeaders;
+        }
+        if (mPrewarmSectionCursor < numHeaders) {
+            int end = Math.min(mPrewarmSectionCursor + PREWARM_SCAN_LIMIT, numHeaders);
+            for (; mPrewarmSectionCursor < end; mPrewarmSectionCursor++) {
+                int viewType = getHeaderItemViewType(mPrewarmSectionCursor);
+                if (mViewPool.size(viewType) < headersPerType) {
+                    HeaderFillerView frame = new HeaderFillerView(mContext);
+                    View header = mDelegate.getHeaderView(mPrewarmSectionCursor, null, mGridView);
+                    frame.setTag(header);
+                    mGridView.attachHeader(header);
+                    mViewPool.put(viewType, frame);
+                    return true;
+                }
+            }
+            return true;
         }
 
-        for (int i = 0; i < numHeaders; i++) {
-            mCount += mDelegate.getCountForHeader(i) + mNumColumns;
+        int count = mDelegate.getCount();
+        if (mPrewarmItemCursor < count && isItemPoolFull(itemsPerType)) {
+            mPrewarmItemCursor = count;
+        }
+        if (mPrewarmItemCursor < count) {
+            int end = Math.min(mPrewarmItemCursor + PREWARM_SCAN_LIMIT, count);
+            for (; mPrewarmItemCursor < end; mPrewarmItemCursor++) {
+                int itemViewType = mDelegate.getItemViewType(mPrewarmItemCursor);
+                if (itemViewType == IGNORE_ITEM_VIEW_TYPE) {
+                    continue;
+                }
+                int viewType = itemViewType + sNumViewTypes;
+                if (mViewPool.size(viewType) < itemsPerType) {
+                    mViewPool.put(viewType,
+                            mDelegate.getView(mPrewarmItemCursor, null, mGridView));
+                    return true;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop the views created ahead of time, detaching pooled headers.
+     */
+    void releasePrewarmedViews() {
+        ArrayList<View> views = mViewPool.takeAll();
+        for (int i = 0; i < views.size(); i++) {
+            View view = views.get(i);
+            if (view instanceof HeaderFillerView) {
+                mGridView.detachHeader((View)view.getTag());
+            }
+        }
+    }
+
+    /**
+     * Start creating views ahead of time from the first position and section
+     * again.
+     */
+    void restartPrewarm() {
+        mPrewarmItemCursor = 0;
+        mPrewarmSectionCursor = 0;
+    }
+
+    /**
+     * Count binds and position translations in the given metrics.
+     * 
+     * @param metrics Metrics for the frame being built, or null to stop
+     *            counting.
+     */
+    void setFrameMetrics(StickyGridHeadersFrameMetrics metrics) {
+        mMetrics = metrics;
+        if (mDelegate instanceof StickyGridHeadersSimpleAdapterWrapper) {
+            ((StickyGridHeadersSimpleAdapterWrapper)mDelegate).setFrameMetrics(metrics);
+        }
+    }
+
+    /**
+     * @return Number of items and headers patched in place with a payload.
+     */
+    int getPayloadBinds() {
+        return mPayloadBinds;
+    }
+
+    /**
+     * @param position Position of an item within the wrapped adapter.
+     * @return GridView position showing the item, or -1 if there is no such
+     *         item.
+     */
+    int getGridPosition(int position) {
+        StickyGridHeadersSectionIndex index = getSectionIndex();
+        if (index.getNumSections() == 0) {
+            return position >= 0 && position < mDelegate.getCount() ? position : -1;
+        }
+        return index.getGridPosition(position);
+    }
+
+    /**
+     * @return Number of header binds given a recycled header view of the right
+     *         type.
+     */
+    int getHeaderRecycleHits() {
+        return mHeaderRecycleHits;
+    }
+
+    /**
+     * @return Number of header binds that had no recycled header view of the
+     *         right type, so the adapter had to create one.
+     */
+    int getHeaderRecycleMisses() {
+        return mHeaderRecycleMisses;
+    }
+
+    /**
+     * @param position GridView position within a section.
+     * @return Header view type of the section, or 0 if the adapter has a single
+     *         header view type.
+     */
+    int getHeaderViewTypeForPosition(int position) {
+        if (getHeaderViewTypeCount() == 1 || mDelegate.getNumHeaders() == 0) {
+            return 0;
+        }
+        return getHeaderViewType(unpackHeader(translatePositionPacked(position)));
+    }
+
+    /**
+     * Find a section by its stable id. This is a linear search, for use when
+     * restoring state.
+     * 
+     * @param sectionId Id from {@link #getSectionId(int)}.
+     * @return Index of the section, or -1 if there is none with the id.
+     */
+    int findSection(long sectionId) {
+        int numSections = getSectionIndex().getNumSections();
+        for (int i = 0; i < numSections; i++) {
+            if (getSectionId(i) == sectionId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param position GridView position.
+     * @return Position of the item within the wrapped adapter, or one of the
+     *         POSITION_ constants for headers and fillers.
+     */
+    int getAdapterPosition(int position) {
+        return unpackPosition(translatePositionPacked(position));
+    }
+
+    /**
+     * @param position Position of an item within the wrapped adapter.
+     * @return Index of the section holding the item, or -1 if there are no
+     *         sections or no such item.
+     */
+    int getSectionForItem(int position) {
+        return getSectionIndex().getSectionForItemPosition(position);
+    }
+
+    /**
+     * Only meaningful if {@link #hasSectionIds()}.
+     */
+    long getSectionId(int section) {
+        return ((StickyGridHeadersStableSectionIdAdapter)mDelegate).getSectionId(section);
+    }
+
+    /**
+     * @return Stable id of a section if the adapter has them, otherwise the
+     *         section's index.
+     */
+    long getReportedSectionId(int section) {
+        return hasSectionIds() ? getSectionId(section) : section;
+    }
+
+    /**
+     * @return true if the wrapped adapter has stable section ids.
+     */
+    boolean hasSectionIds() {
+        return mDelegate instanceof StickyGridHeadersStableSectionIdAdapter
+                && ((StickyGridHeadersStableSectionIdAdapter)mDelegate).hasStableSectionIds();
+    }
+
+    /**
+     * Find where a section has moved to in the data set change being
+     * notified.
+     * 
+     * @param section Index of the section before the change.
+     * @return Index of the section after the change, or -1 if it was removed
+     *         or the change was not diffed.
+     */
+    int remapSection(int section) {
+        if (mLastDiff == null) {
+            return -1;
         }
+        return mLastDiff.findNewSection(section);
+    }
+
+    protected long getHeaderId(int position) {
+        return unpackHeader(translatePositionPacked(position));
+    }
+
+    protected View getHeaderView(int position, View convertView, ViewGroup parent) {
+        if (mDelegate.getNumHeaders() == 0) {
+            return null;
+        }
+
+        return mDelegate.getHeaderView(unpackHeader(translatePositionPacked(position)),
+                convertView, parent);
+    }
+
+    /**
+     * Translate a GridView position to an adapter position.
+     * 
+     * @deprecated Allocates on every call. Use
+     *             {@link #translatePositionPacked(int)} instead.
+     */
+    @Deprecated
+    protected Position translatePosition(int position) {
+        long translated = translatePositionPacked(position);
+        return new Position(unpackPosition(translated), unpackHeader(translated));
+    }
+
+    /**
+     * Translate a GridView position to an adapter position without allocating.
+     * The header is packed into the high 32 bits of the result and the adapter
+     * position, or one of the POSITION_ constants for fake entries, into the
+     * low 32 bits. Use {@link #unpackHeader(long)} and
+     * {@link #unpackPosition(long)} to read them.
+     * 
+     * @param position Position within the GridView.
+     * @return Packed header and adapter position.
+     */
+    protected long translatePositionPacked(int position) {
+        if (mMetrics != null) {
+            mMetrics.mTranslateCalls++;
+        }
+        StickyGridHeadersSectionIndex index = getSectionIndex();
+        if (index.getNumSections() == 0) {
+            if (position >= mDelegate.getCount()) {
+                return pack(POSITION_FILLER, 0);
+            }
+            return pack(position, 0);
+        }
+
+        long translated = index.translatePosition(position);
+        if (mSectionExecutor == null) {
+            return translated;
+        }
+
+        // Sections and items may have been removed while the new index is
+        // still being built. Show their cells blank and keep the section in
+        // range for the stickied header.
+        int header = unpackHeader(translated);
+        int numHeaders = mDelegate.getNumHeaders();
+        if (header >= numHeaders) {
+            return pack(POSITION_FILLER, Math.max(numHeaders - 1, 0));
+        }
+        if (unpackPosition(translated) >= mDelegate.getCount()) {
+            return pack(POSITION_FILLER, header);
+        }
+        return translated;
+    }
+
+    protected static int unpackHeader(long translated) {
+        return StickyGridHeadersSectionIndex.unpackSection(translated);
+    }
+
+    protected static int unpackPosition(long translated) {
+        return StickyGridHeadersSectionIndex.unpackPosition(translated);
+    }
+
+    private static long pack(int position, int header) {
+        return StickyGridHeadersSectionIndex.pack(position, header);
+    }
+
+    /**
+     * Rebuild the section index and count from the wrapped adapter. Each
+     * section's count is read from the delegate exactly once.
+     */
+    protected void updateCount() {
+        long start = mMetrics != null ? System.nanoTime() : 0;
+        int[] counts = readCounts();
+        setSectionIndex(new StickyGridHeadersSectionIndex(counts, mNumColumns),
+                mDelegate.getCount());
         mCounted = true;
+        if (mSnapshot == null && mSectionExecutor == null && hasStableSectionIds()) {
+            // Taken against the new index, so the showing items are found.
+            mSnapshot = takeSnapshot(counts);
+        }
+
+        if (mMetrics != null) {
+            mMetrics.mRegroupNanos += System.nanoTime() - start;
+            mMetrics.mRegroups++;
+        }
     }
 
     /**
@@ -388,8 +1450,9 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
 
         @Override
         protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-            heightMeasureSpec = MeasureSpec.makeMeasureSpec(mMeasureTarget.getMeasuredHeight(),
-                    MeasureSpec.EXACTLY);
+            // A stale section may be blanked before any view has been seen.
+            int height = mMeasureTarget == null ? 0 : mMeasureTarget.getMeasuredHeight();
+            heightMeasureSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         }
     }
@@ -401,7 +1464,15 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
      * @author Tonic Artos
      */
     protected class HeaderFillerView extends FrameLayout {
-        private int mHeaderId;
+        private int mBindGeneration;
+
+        private int mHeaderId = -1;
+
+        private int mLaidOutHeaderHeight;
+
+        private int mLaidOutHeaderWidthSpec;
+
+        private View mLaidOutHeader;
 
         public HeaderFillerView(Context context) {
             super(context);
@@ -419,6 +1490,28 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
             return mHeaderId;
         }
 
+        /**
+         * Check if the frame's header was bound to the given section since the
+         * section's header last changed.
+         */
+        boolean isBoundTo(int headerId, int changedGeneration) {
+            return mHeaderId == headerId && mBindGeneration >= changedGeneration
+                    && getTag() != null;
+        }
+
+        /**
+         * Check if the header was last laid out with the given width spec and
+         * height and has not requested layout since.
+         */
+        boolean isHeaderLayoutValid(View header, int widthMeasureSpec, int height) {
+            return mLaidOutHeader == header && mLaidOutHeaderWidthSpec == widthMeasureSpec
+                    && mLaidOutHeaderHeight == height && !header.isLayoutRequested();
+        }
+
+        void setBindGeneration(int bindGeneration) {
+            mBindGeneration = bindGeneration;
+        }
+
         /**
          * Set the adapter id for this header so we can easily pull it later.
          */
@@ -426,6 +1519,15 @@ public class StickyGridHeadersBaseAdapterWrapper extends BaseAdapter {
             mHeaderId = headerId;
         }
 
+        /**
+         * Record the width spec and height the header was laid out with.
+         */
+        void setHeaderLayout(View header, int widthMeasureSpec, int height) {
+            mLaidOutHeader = header;
+            mLaidOutHeaderWidthSpec = widthMeasureSpec;
+            mLaidOutHeaderHeight = height;
+        }
+
         @Override
         protected LayoutParams generateDefaultLayoutParams() {
             return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
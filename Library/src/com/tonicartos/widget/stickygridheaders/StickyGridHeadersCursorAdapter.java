@@ -0,0 +1,386 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Adapter backed by two cursors, one over the items and one over the sections
+ * with a row per section. The sections cursor is typically a
+ * <code>GROUP BY ... COUNT(*)</code> query over the same ordering as the items,
+ * so section sizes come from the database rather than from scanning the items.
+ * Item and section rows are only read when their views are bound.
+ * <p>
+ * The adapter watches the items cursor for changes and calls
+ * {@link #onContentChanged()}, which queries again on the executor last given
+ * to {@link #requery(Executor)}. Adapters only fed with
+ * {@link #changeCursors(Cursor, Cursor)} must override it, or call
+ * changeCursors() again themselves.
+ * </p>
+ * 
+ * @author Tonic Artos
+ */
+public abstract class StickyGridHeadersCursorAdapter extends BaseAdapter implements
+        StickyGridHeadersBaseAdapter {
+    /**
+     * Number of times to query again when the two cursors disagree on the
+     * number of items, before making the section sizes fit.
+     */
+    private static final int MAX_QUERY_ATTEMPTS = 3;
+
+    private final ContentObserver mChangeObserver;
+
+    private final String mCountColumn;
+
+    private int[] mCounts = new int[0];
+
+    private final Context mContext;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private int mIdColumn = -1;
+
+    private Cursor mItems;
+
+    /**
+     * Incremented whenever the cursors change so that superseded background
+     * queries are dropped.
+     */
+    private int mQueryGeneration;
+
+    private Executor mRequeryExecutor;
+
+    private Cursor mSections;
+
+    /**
+     * @param context Context to create views with.
+     * @param countColumn Name of the column in the sections cursor holding the
+     *            number of items in each section.
+     */
+    public StickyGridHeadersCursorAdapter(Context context, String countColumn) {
+        mContext = context;
+        mCountColumn = countColumn;
+        mChangeObserver = new ChangeObserver();
+    }
+
+    /**
+     * Change the cursors, closing the old ones. Section sizes are read from the
+     * sections cursor straight away, so prefer {@link #requery(Executor)} for
+     * large data sets.
+     * 
+     * @param items Cursor over the items, or null.
+     * @param sections Cursor with a row per section, or null.
+     */
+    public void changeCursors(Cursor items, Cursor sections) {
+        mQueryGeneration++;
+        swapCursors(items, sections,
+                fitCounts(readCounts(sections), items == null ? 0 : items.getCount()));
+    }
+
+    public Cursor getCursor() {
+        return mItems;
+    }
+
+    @Override
+    public int getCount() {
+        return mItems == null ? 0 : mItems.getCount();
+    }
+
+    @Override
+    public int getCountForHeader(int header) {
+        return mCounts[header];
+    }
+
+    @Override
+    public View getHeaderView(int position, View convertView, ViewGroup parent) {
+        if (!mSections.moveToPosition(position)) {
+            throw new IllegalStateException("Couldn't move sections cursor to position "
+                    + position);
+        }
+        View view = convertView;
+        if (view == null) {
+            view = newHeaderView(mContext, mSections, parent);
+        }
+        bindHeaderView(view, mContext, mSections);
+        return view;
+    }
+
+    /**
+     * @return The items cursor, moved to the item's row.
+     */
+    @Override
+    public Object getItem(int position) {
+        if (mItems == null || !mItems.moveToPosition(position)) {
+            return null;
+        }
+        return mItems;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (mIdColumn == -1 || !mItems.moveToPosition(position)) {
+            return position;
+        }
+        return mItems.getLong(mIdColumn);
+    }
+
+    @Override
+    public int getNumHeaders() {
+        return mCounts.length;
+    }
+
+    public Cursor getSectionsCursor() {
+        return mSections;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        if (!mItems.moveToPosition(position)) {
+            throw new IllegalStateException("Couldn't move items cursor to position "
+                    + position);
+        }
+        View view = convertView;
+        if (view == null) {
+            view = newView(mContext, mItems, parent);
+        }
+        bindView(view, mContext, mItems);
+        return view;
+    }
+
+    /**
+     * @return true if the items cursor has an _id column.
+     */
+    @Override
+    public boolean hasStableIds() {
+        return mIdColumn != -1;
+    }
+
+    /**
+     * Run {@link #queryItems()} and {@link #queryHeaders()} on an executor and
+     * swap the results in on the UI thread, closing the old cursors. The
+     * cursors are filled and the section sizes read on the executor too.
+     * <p>
+     * The two queries are not atomic, so if the data changes between them the
+     * section sizes may not add up to the number of items. The queries are
+     * then run again, and if they still disagree the section sizes are made
+     * to fit the items.
+     * </p>
+     * 
+     * @param executor Executor to query on. It is also used to query again
+     *            when the items cursor reports a change.
+     */
+    public void requery(Executor executor) {
+        mRequeryExecutor = executor;
+        final int generation = ++mQueryGeneration;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cursor queriedItems = null;
+                Cursor queriedSections = null;
+                int[] queriedCounts = null;
+                int itemCount = 0;
+                for (int attempt = 0; attempt < MAX_QUERY_ATTEMPTS; attempt++) {
+                    closeCursor(queriedItems);
+                    closeCursor(queriedSections);
+                    queriedItems = queryItems();
+                    queriedSections = queryHeaders();
+                    // Fill the cursor window here rather than on the UI thread.
+                    itemCount = queriedItems == null ? 0 : queriedItems.getCount();
+                    queriedCounts = readCounts(queriedSections);
+                    if (sum(queriedCounts) == itemCount) {
+                        break;
+                    }
+                }
+
+                final Cursor items = queriedItems;
+                final Cursor sections = queriedSections;
+                final int[] counts = fitCounts(queriedCounts, itemCount);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mQueryGeneration) {
+                            closeCursor(items);
+                            closeCursor(sections);
+                            return;
+                        }
+                        swapCursors(items, sections, counts);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Make section sizes add up to the number of items, so that a data change
+     * between the items and sections queries can not move a cursor out of
+     * range. Sections are trimmed from the end, or the last section takes any
+     * extra items.
+     * 
+     * @param counts Section sizes read from the sections cursor. Adjusted in
+     *            place.
+     * @param itemCount Number of rows in the items cursor.
+     * @return Section sizes that add up to itemCount.
+     */
+    static int[] fitCounts(int[] counts, int itemCount) {
+        int excess = sum(counts) - itemCount;
+        if (excess == 0) {
+            return counts;
+        }
+        if (counts.length == 0) {
+            // Without sections the items are shown ungrouped.
+            return counts;
+        }
+
+        if (excess < 0) {
+            counts[counts.length - 1] -= excess;
+            return counts;
+        }
+        for (int i = counts.length - 1; i >= 0 && excess > 0; i--) {
+            int trim = Math.min(counts[i], excess);
+            counts[i] -= trim;
+            excess -= trim;
+        }
+        return counts;
+    }
+
+    private static void closeCursor(Cursor cursor) {
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    private int[] readCounts(Cursor sections) {
+        if (sections == null) {
+            return new int[0];
+        }
+
+        int countColumn = sections.getColumnIndexOrThrow(mCountColumn);
+        int[] counts = new int[sections.getCount()];
+        for (int i = 0; i < counts.length; i++) {
+            sections.moveToPosition(i);
+            counts[i] = sections.getInt(countColumn);
+        }
+        return counts;
+    }
+
+    private void swapCursors(Cursor items, Cursor sections, int[] counts) {
+        Cursor oldItems = mItems;
+        Cursor oldSections = mSections;
+        mItems = items;
+        mSections = sections;
+        mCounts = counts;
+        mIdColumn = items == null ? -1 : items.getColumnIndex("_id");
+
+        if (items == null) {
+            notifyDataSetInvalidated();
+        } else {
+            notifyDataSetChanged();
+        }
+
+        if (oldItems != items) {
+            if (oldItems != null && !oldItems.isClosed()) {
+                oldItems.unregisterContentObserver(mChangeObserver);
+            }
+            if (items != null) {
+                items.registerContentObserver(mChangeObserver);
+            }
+            closeCursor(oldItems);
+        }
+        if (oldSections != sections) {
+            closeCursor(oldSections);
+        }
+    }
+
+    /**
+     * Called when the items cursor reports that its data has changed. Queries
+     * again on the executor last given to {@link #requery(Executor)}, if any.
+     */
+    protected void onContentChanged() {
+        if (mRequeryExecutor != null) {
+            requery(mRequeryExecutor);
+        }
+    }
+
+    /**
+     * Bind a header view to the section the cursor is moved to.
+     */
+    protected abstract void bindHeaderView(View view, Context context, Cursor sections);
+
+    /**
+     * Bind an item view to the item the cursor is moved to.
+     */
+    protected abstract void bindView(View view, Context context, Cursor items);
+
+    /**
+     * Create a new header view, which will then be bound.
+     */
+    protected abstract View newHeaderView(Context context, Cursor sections, ViewGroup parent);
+
+    /**
+     * Create a new item view, which will then be bound.
+     */
+    protected abstract View newView(Context context, Cursor items, ViewGroup parent);
+
+    /**
+     * Query the sections, one row per section in the same order as the items.
+     * Called on the executor given to {@link #requery(Executor)}.
+     * 
+     * @return Cursor with a row per section, including the count column.
+     */
+    protected abstract Cursor queryHeaders();
+
+    /**
+     * Query the items. Called on the executor given to
+     * {@link #requery(Executor)}.
+     * 
+     * @return Cursor over the items.
+     */
+    protected abstract Cursor queryItems();
+
+    private final class ChangeObserver extends ContentObserver {
+        public ChangeObserver() {
+            super(mHandler);
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onContentChanged();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * Work done by a {@link StickyGridHeadersGridView} over a span of frames,
+ * usually one. Instances are reused, so read the figures in the callback they
+ * are given to and do not keep a reference.
+ * 
+ * @author Tonic Artos
+ */
+public final class StickyGridHeadersFrameMetrics {
+    /**
+     * Number of most recent section ids kept.
+     */
+    static final int MAX_SECTION_IDS = 16;
+
+    int mFillerBinds;
+
+    long mDrawNanos;
+
+    long mFrameTimeNanos;
+
+    int mHeaderBinds;
+
+    long mHeaderBindNanos;
+
+    int mHeaderMeasures;
+
+    int mItemBinds;
+
+    long mItemBindNanos;
+
+    long mMeasureNanos;
+
+    int mReflectiveCalls;
+
+    int mRegroups;
+
+    long mRegroupNanos;
+
+    /**
+     * Ring of the most recent section ids, indexed by the number written.
+     */
+    final long[] mSectionIds = new long[MAX_SECTION_IDS];
+
+    int mSectionIdsWritten;
+
+    int mStickiedHeaderSwaps;
+
+    long mStickiedHeaderSwapNanos;
+
+    int mTranslateCalls;
+
+    StickyGridHeadersFrameMetrics() {
+    }
+
+    /**
+     * @return Time spent drawing the grid, in nanoseconds.
+     */
+    public long getDrawNanos() {
+        return mDrawNanos;
+    }
+
+    /**
+     * @return Number of filler cells bound.
+     */
+    public int getFillerBinds() {
+        return mFillerBinds;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at the end of the span.
+     */
+    public long getFrameTimeNanos() {
+        return mFrameTimeNanos;
+    }
+
+    /**
+     * @return Number of headers bound in the grid by the adapter's
+     *         getHeaderView() or patched in place with a payload. Frames that
+     *         already showed their header are not counted.
+     */
+    public int getHeaderBinds() {
+        return mHeaderBinds;
+    }
+
+    /**
+     * @return Time spent binding headers in the grid, in nanoseconds.
+     */
+    public long getHeaderBindNanos() {
+        return mHeaderBindNanos;
+    }
+
+    /**
+     * @return Number of times a header was measured and laid out.
+     */
+    public int getHeaderMeasures() {
+        return mHeaderMeasures;
+    }
+
+    /**
+     * @return Number of items bound by the adapter's getView(), including
+     *         showing items bound again in place, or patched in place with a
+     *         payload.
+     */
+    public int getItemBinds() {
+        return mItemBinds;
+    }
+
+    /**
+     * @return Time spent binding items, in nanoseconds.
+     */
+    public long getItemBindNanos() {
+        return mItemBindNanos;
+    }
+
+    /**
+     * @return Time spent measuring the grid, in nanoseconds.
+     */
+    public long getMeasureNanos() {
+        return mMeasureNanos;
+    }
+
+    /**
+     * @return Number of reflective calls made to attach and detach headers.
+     */
+    public int getReflectiveCalls() {
+        return mReflectiveCalls;
+    }
+
+    /**
+     * @return Number of times sections were regrouped and indexed after a
+     *         data set or column change.
+     */
+    public int getRegroups() {
+        return mRegroups;
+    }
+
+    /**
+     * @return Time spent regrouping and indexing sections on the UI thread, in
+     *         nanoseconds.
+     */
+    public long getRegroupNanos() {
+        return mRegroupNanos;
+    }
+
+    /**
+     * Get the id of a section whose header was bound or stickied. These are
+     * stable section ids if the adapter has them, otherwise section indexes.
+     * 
+     * @param index From 0, oldest first, to {@link #getSectionIdCount()}.
+     */
+    public long getSectionId(int index) {
+        int count = getSectionIdCount();
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + count);
+        }
+        return mSectionIds[(mSectionIdsWritten - count + index) % MAX_SECTION_IDS];
+    }
+
+    /**
+     * @return Number of section ids available, at most the 16 most recent.
+     */
+    public int getSectionIdCount() {
+        return Math.min(mSectionIdsWritten, MAX_SECTION_IDS);
+    }
+
+    /**
+     * @return Number of times the stickied header changed section.
+     */
+    public int getStickiedHeaderSwaps() {
+        return mStickiedHeaderSwaps;
+    }
+
+    /**
+     * @return Time spent binding and measuring the stickied header when it
+     *         changed section, in nanoseconds.
+     */
+    public long getStickiedHeaderSwapNanos() {
+        return mStickiedHeaderSwapNanos;
+    }
+
+    /**
+     * @return Number of GridView positions translated to sections and adapter
+     *         positions.
+     */
+    public int getTranslateCalls() {
+        return mTranslateCalls;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StickyGridHeadersFrameMetrics{itemBinds=");
+        sb.append(mItemBinds).append(" itemBindNanos=").append(mItemBindNanos)
+                .append(" headerBinds=").append(mHeaderBinds).append(" headerBindNanos=")
+                .append(mHeaderBindNanos).append(" fillerBinds=").append(mFillerBinds)
+                .append(" headerMeasures=").append(mHeaderMeasures).append(" measureNanos=")
+                .append(mMeasureNanos).append(" drawNanos=").append(mDrawNanos)
+                .append(" stickiedHeaderSwaps=").append(mStickiedHeaderSwaps)
+                .append(" stickiedHeaderSwapNanos=").append(mStickiedHeaderSwapNanos)
+                .append(" regroups=").append(mRegroups).append(" regroupNanos=")
+                .append(mRegroupNanos).append(" translateCalls=").append(mTranslateCalls)
+                .append(" reflectiveCalls=").append(mReflectiveCalls).append(" sectionIds=[");
+        for (int i = 0, n = getSectionIdCount(); i < n; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(getSectionId(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    void addSectionId(long sectionId) {
+        mSectionIds[mSectionIdsWritten % MAX_SECTION_IDS] = sectionId;
+        mSectionIdsWritten++;
+    }
+
+    /**
+     * Copy another set of metrics.
+     */
+    void set(StickyGridHeadersFrameMetrics other) {
+        mDrawNanos = other.mDrawNanos;
+        mFillerBinds = other.mFillerBinds;
+        mFrameTimeNanos = other.mFrameTimeNanos;
+        mHeaderBinds = other.mHeaderBinds;
+        mHeaderBindNanos = other.mHeaderBindNanos;
+        mHeaderMeasures = other.mHeaderMeasures;
+        mItemBinds = other.mItemBinds;
+        mItemBindNanos = other.mItemBindNanos;
+        mMeasureNanos = other.mMeasureNanos;
+        mReflectiveCalls = other.mReflectiveCalls;
+        mRegroups = other.mRegroups;
+        mRegroupNanos = other.mRegroupNanos;
+        System.arraycopy(other.mSectionIds, 0, mSectionIds, 0, MAX_SECTION_IDS);
+        mSectionIdsWritten = other.mSectionIdsWritten;
+        mStickiedHeaderSwaps = other.mStickiedHeaderSwaps;
+        mStickiedHeaderSwapNanos = other.mStickiedHeaderSwapNanos;
+        mTranslateCalls = other.mTranslateCalls;
+    }
+
+    /**
+     * Set these metrics to the work counted in running totals since an
+     * earlier copy of them was taken.
+     * 
+     * @param totals Running totals.
+     * @param since Copy of the totals taken at the start of the span.
+     */
+    void setDifference(StickyGridHeadersFrameMetrics totals, StickyGridHeadersFrameMetrics since) {
+        mDrawNanos = totals.mDrawNanos - since.mDrawNanos;
+        mFillerBinds = totals.mFillerBinds - since.mFillerBinds;
+        mFrameTimeNanos = totals.mFrameTimeNanos;
+        mHeaderBinds = totals.mHeaderBinds - since.mHeaderBinds;
+        mHeaderBindNanos = totals.mHeaderBindNanos - since.mHeaderBindNanos;
+        mHeaderMeasures = totals.mHeaderMeasures - since.mHeaderMeasures;
+        mItemBinds = totals.mItemBinds - since.mItemBinds;
+        mItemBindNanos = totals.mItemBindNanos - since.mItemBindNanos;
+        mMeasureNanos = totals.mMeasureNanos - since.mMeasureNanos;
+        mReflectiveCalls = totals.mReflectiveCalls - since.mReflectiveCalls;
+        mRegroups = totals.mRegroups - since.mRegroups;
+        mRegroupNanos = totals.mRegroupNanos - since.mRegroupNanos;
+        mStickiedHeaderSwaps = totals.mStickiedHeaderSwaps - since.mStickiedHeaderSwaps;
+        mStickiedHeaderSwapNanos = totals.mStickiedHeaderSwapNanos
+                - since.mStickiedHeaderSwapNanos;
+        mTranslateCalls = totals.mTranslateCalls - since.mTranslateCalls;
+
+        int count = Math.min(totals.mSectionIdsWritten - since.mSectionIdsWritten,
+                MAX_SECTION_IDS);
+        mSectionIdsWritten = 0;
+        for (int i = totals.mSectionIdsWritten - count; i < totals.mSectionIdsWritten; i++) {
+            addSectionId(totals.mSectionIds[i % MAX_SECTION_IDS]);
+        }
+    }
+}
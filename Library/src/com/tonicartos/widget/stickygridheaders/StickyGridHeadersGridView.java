@@ -18,16 +18,25 @@ package com.tonicartos.widget.stickygridheaders;
 
 import android.content.Context;
 import android.database.DataSetObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.accessibility.AccessibilityEvent;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
@@ -42,8 +51,7 @@ import com.tonicartos.widget.stickygridheaders.StickyGridHeadersBaseAdapterWrapp
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * GridView that displays items in sections with headers that stick to the top
@@ -60,6 +68,14 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
 
     private static final int NO_MATCHED_HEADER = -1;
 
+    private static final int SELECT_ADAPTER_POSITION = 2;
+
+    private static final int SELECT_NONE = 0;
+
+    private static final int SELECT_SECTION = 1;
+
+    private static final int SELECT_SECTION_SMOOTHLY = 3;
+
     protected static final int TOUCH_MODE_DONE_WAITING = 2;
 
     protected static final int TOUCH_MODE_DOWN = 0;
@@ -72,24 +88,39 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
 
     static final String TAG = StickyGridHeadersGridView.class.getSimpleName();
 
-    private static MotionEvent.PointerCoords[] getPointerCoords(MotionEvent e) {
-        int n = e.getPointerCount();
-        MotionEvent.PointerCoords[] r = new MotionEvent.PointerCoords[n];
-        for (int i = 0; i < n; i++) {
-            r[i] = new MotionEvent.PointerCoords();
-            e.getPointerCoords(i, r[i]);
-        }
-        return r;
-    }
+    /**
+     * View.mAttachInfo, resolved once on first use.
+     */
+    private static Field sAttachInfoField;
 
-    private static int[] getPointerIds(MotionEvent e) {
-        int n = e.getPointerCount();
-        int[] r = new int[n];
-        for (int i = 0; i < n; i++) {
-            r[i] = e.getPointerId(i);
-        }
-        return r;
-    }
+    /**
+     * View.dispatchAttachedToWindow(AttachInfo, int), resolved once on first
+     * use.
+     */
+    private static Method sDispatchAttachedToWindow;
+
+    /**
+     * View.dispatchDetachedFromWindow(), resolved once on first use.
+     */
+    private static Method sDispatchDetachedFromWindow;
+
+    private boolean mAnchorHasSectionId;
+
+    private boolean mAnchorScrollPending;
+
+    /**
+     * Distance of the anchor item's top from the top padding when state was
+     * saved.
+     */
+    private int mAnchorOffset;
+
+    /**
+     * Adapter position of the first visible item when state was saved, to
+     * scroll back to once restored, or -1.
+     */
+    private int mAnchorPosition = -1;
+
+    private long mAnchorSectionId;
 
     private boolean mAreHeadersSticky = true;
 
@@ -99,6 +130,8 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
 
     private boolean mClipToPaddingHasBeenSet;
 
+    private boolean mColumnsMeasured;
+
     private int mColumnWidth;
 
     private long mCurrentHeaderId = -1;
@@ -106,7 +139,13 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
     private DataSetObserver mDataSetObserver = new DataSetObserver() {
         @Override
         public void onChanged() {
-            reset();
+            int section = mAdapter.remapSection((int)mCurrentHeaderId);
+            if (section >= 0 && mStickiedHeader != null) {
+                // The stickied section is still there, so keep its header.
+                mCurrentHeaderId = section;
+            } else {
+                reset();
+            }
         }
 
         @Override
@@ -115,14 +154,61 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         }
     };
 
+    /**
+     * Work done in the last frame drawn, given to the metrics listener.
+     */
+    private StickyGridHeadersFrameMetrics mFrameMetrics;
+
+    /**
+     * Copy of the running totals when the last frame was drawn.
+     */
+    private StickyGridHeadersFrameMetrics mFrameMetricsStart;
+
     private int mHeaderBottomPosition;
 
+    /**
+     * Bottoms of the header frames found in the last frame drawn, parallel to
+     * {@link #mHeaderChildIndexes}.
+     */
+    private int[] mHeaderBottoms = new int[8];
+
+    /**
+     * Child indexes of header frames found in the last frame drawn. Reused
+     * across frames and only grown when more rows become visible.
+     */
+    private int[] mHeaderChildIndexes = new int[8];
+
+    private final Runnable mHeaderLongPress = new CheckForHeaderLongPress();
+
+    /**
+     * Tops of the header frames found in the last frame drawn, parallel to
+     * {@link #mHeaderChildIndexes}. Frames are in child order so the tops are
+     * ascending.
+     */
+    private int[] mHeaderTops = new int[8];
+
+    private int mLastFrameReflectiveCalls;
+
+    private int mHeaderMeasuresPerformed;
+
+    private int mHeaderMeasuresSkipped;
+
     private boolean mHeadersIgnorePadding;
 
     private int mHorizontalSpacing;
 
+    private StickyGridHeadersJankMonitor mJankMonitor;
+
     private boolean mMaskStickyHeaderRegion = true;
 
+    /**
+     * Running totals of the work done, or null if there is neither a metrics
+     * listener nor a jank monitor.
+     */
+    private StickyGridHeadersFrameMetrics mMetrics;
+
+    private OnMetricsListener mMetricsListener;
+
     private float mMotionY;
 
     /**
@@ -132,20 +218,88 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
 
     private boolean mNumColumnsSet;
 
+    private int mNumHeaderFrames;
+
     private int mNumMeasuredColumns = 1;
 
+    private OnHeaderClickListener mOnHeaderClickListener;
+
+    private OnHeaderLongClickListener mOnHeaderLongClickListener;
+
     private OnItemClickListener mOnItemClickListener;
 
     private OnItemLongClickListener mOnItemLongClickListener;
 
     private OnItemSelectedListener mOnItemSelectedListener;
 
+    private int mPendingSelection;
+
+    private int mPendingSelectionKind = SELECT_NONE;
+
+    private int mPrewarmFillers;
+
+    /**
+     * Creates one view ahead of time each time the main thread is idle, until
+     * the adapter's pool is full.
+     */
+    private final MessageQueue.IdleHandler mPrewarmHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            boolean more = mAdapter != null
+                    && mAdapter.prewarmNext(mPrewarmItems, mPrewarmHeaders, mPrewarmFillers);
+            mPrewarmScheduled = more;
+            return more;
+        }
+    };
+
+    private int mPrewarmHeaders;
+
+    private int mPrewarmItems;
+
+    private boolean mPrewarmScheduled;
+
+    private int mReflectiveCalls;
+
     private OnScrollListener mScrollListener;
 
+    private Executor mSectionExecutor;
+
     private int mScrollState = SCROLL_STATE_IDLE;
 
     private View mStickiedHeader;
 
+    private Bitmap mStickiedHeaderCache;
+
+    private final Canvas mStickiedHeaderCacheCanvas = new Canvas();
+
+    private boolean mStickiedHeaderCacheEnabled;
+
+    private long mStickiedHeaderCacheId = INVALID_ROW_ID;
+
+    private final Paint mStickiedHeaderCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private int mStickiedHeaderHeightSpec;
+
+    private int mStickiedHeaderRecycleHits;
+
+    private int mStickiedHeaderRecycleMisses;
+
+    /**
+     * Stickied header views put aside, one per header view type, to be
+     * rebound when a section of the same type is stickied.
+     */
+    private final SparseArray<View> mStickiedHeaderScrap = new SparseArray<View>();
+
+    private int mStickiedHeaderViewType;
+
+    /**
+     * The stickied header instance last measured by {@link #measureHeader()},
+     * or null if it must be measured again.
+     */
+    private View mStickiedHeaderMeasured;
+
+    private int mStickiedHeaderWidthSpec;
+
     private Runnable mTouchModeReset;
 
     private int mTouchSlop;
@@ -179,12 +333,37 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
 
         ViewConfiguration vc = ViewConfiguration.get(context);
         mTouchSlop = vc.getScaledTouchSlop();
+        mTouchMode = TOUCH_MODE_REST;
     }
 
     public boolean areHeadersSticky() {
         return mAreHeadersSticky;
     }
 
+    @Override
+    public void draw(Canvas canvas) {
+        long start = mMetrics != null ? System.nanoTime() : 0;
+        super.draw(canvas);
+
+        // Roll over per frame counters.
+        mLastFrameReflectiveCalls = mReflectiveCalls;
+        mReflectiveCalls = 0;
+
+        if (mMetrics != null) {
+            long now = System.nanoTime();
+            mMetrics.mDrawNanos += now - start;
+            mMetrics.mFrameTimeNanos = now;
+            if (mMetricsListener != null) {
+                mFrameMetrics.setDifference(mMetrics, mFrameMetricsStart);
+                mFrameMetricsStart.set(mMetrics);
+                mMetricsListener.onFrameMetrics(this, mFrameMetrics);
+            }
+            if (mJankMonitor != null) {
+                mJankMonitor.onDraw();
+            }
+        }
+    }
+
     /**
      * Gets the header at an item position. However, the position must be that
      * of a HeaderFiller.
@@ -205,6 +384,118 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         return null;
     }
 
+    /**
+     * Get the number of times a header has been measured and laid out while
+     * drawing or tracking the stickied header.
+     * 
+     * @return Total header measures performed.
+     */
+    public int getHeaderMeasuresPerformed() {
+        return mHeaderMeasuresPerformed;
+    }
+
+    /**
+     * Get the number of times a header measure was skipped because the header
+     * was already laid out for the same width and height.
+     * 
+     * @return Total header measures skipped.
+     */
+    public int getHeaderMeasuresSkipped() {
+        return mHeaderMeasuresSkipped;
+    }
+
+    /**
+     * Get the number of times binding a header in the grid was skipped because
+     * its frame already showed that section.
+     * 
+     * @return Total header binds skipped.
+     */
+    public int getHeaderBindsSkipped() {
+        if (mAdapter == null) {
+            return 0;
+        }
+        return mAdapter.getHeaderBindsSkipped();
+    }
+
+    /**
+     * Get the number of header binds, in the grid or stickied, that were given
+     * a recycled header view of the right type.
+     * 
+     * @return Total header recycle hits.
+     */
+    public int getHeaderRecycleHits() {
+        int hits = mStickiedHeaderRecycleHits;
+        if (mAdapter != null) {
+            hits += mAdapter.getHeaderRecycleHits();
+        }
+        return hits;
+    }
+
+    /**
+     * Get the number of header binds, in the grid or stickied, that had no
+     * recycled header view of the right type, so the adapter had to create
+     * one.
+     * 
+     * @return Total header recycle misses.
+     */
+    public int getHeaderRecycleMisses() {
+        int misses = mStickiedHeaderRecycleMisses;
+        if (mAdapter != null) {
+            misses += mAdapter.getHeaderRecycleMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * Get the number of items rebound in place, without laying out the grid,
+     * after data set changes that did not change the layout. See
+     * {@link StickyGridHeadersStableSectionIdAdapter}.
+     * 
+     * @return Total items rebound in place.
+     */
+    public int getItemsRebound() {
+        if (mAdapter == null) {
+            return 0;
+        }
+        return mAdapter.getItemsRebound();
+    }
+
+    /**
+     * Get the number of views created ahead of time by
+     * {@link #setPrewarmCounts(int, int, int)} that have been used.
+     * 
+     * @return Total prewarmed views used.
+     */
+    public int getPrewarmedViewsUsed() {
+        if (mAdapter == null) {
+            return 0;
+        }
+        return mAdapter.getPrewarmedViewsUsed();
+    }
+
+    /**
+     * Get the number of items and headers patched in place with a change
+     * payload.
+     * 
+     * @return Total payload binds.
+     */
+    public int getPayloadBinds() {
+        if (mAdapter == null) {
+            return 0;
+        }
+        return mAdapter.getPayloadBinds();
+    }
+
+    /**
+     * Get the number of reflective attach and detach calls made on headers
+     * between the last two frames drawn.
+     * 
+     * @return Reflective invocations in the last frame.
+     */
+    public int getReflectiveCallsLastFrame() {
+        return mLastFrameReflectiveCalls;
+    }
+
     /**
      * Get the currently stickied header.
      * 
@@ -218,22 +509,152 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         return !mMaskStickyHeaderRegion;
     }
 
+    /**
+     * Force the stickied header to be rendered again into its snapshot cache
+     * on the next draw. Only needed if the header changes in a way that does
+     * not invalidate the header view.
+     */
+    public void invalidateStickiedHeaderCache() {
+        mStickiedHeaderCacheId = INVALID_ROW_ID;
+        invalidate();
+    }
+
+    /**
+     * Rebind the header of a section, in the grid and if stickied. Headers are
+     * only rebound on data set changes, so call this when a header's content
+     * changes without one.
+     * 
+     * @param section Index of the section. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the index of
+     *            the header in order of appearance, not an item position.
+     */
+    public void invalidateHeader(int section) {
+        if (mAdapter == null) {
+            return;
+        }
+        mAdapter.invalidateHeader(section);
+        if (getStickiedSection() == section) {
+            rebindStickiedHeader();
+        }
+    }
+
+    /**
+     * Bind every showing cell and header again, including the stickied header.
+     * <p>
+     * If the adapter has stable item ids and implements
+     * {@link StickyGridHeadersStableSectionIdAdapter}, a data set change only
+     * rebinds the cells and headers whose ids changed. Call this after changing
+     * the content of items or sections that kept their ids.
+     * </p>
+     */
+    @Override
+    public void invalidateViews() {
+        if (mAdapter != null) {
+            mAdapter.invalidateHeaders();
+            rebindStickiedHeader();
+        }
+        super.invalidateViews();
+    }
+
+    public boolean isStickiedHeaderCacheEnabled() {
+        return mStickiedHeaderCacheEnabled;
+    }
+
+    /**
+     * Patch the header of a section in place, in the grid and if stickied,
+     * without rebinding anything else or laying out the grid. See
+     * {@link StickyGridHeadersPayloadAdapter}.
+     * 
+     * @param section Index of the section. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the index of
+     *            the header in order of appearance, not an item position.
+     * @param payload Description of the change, passed on to the adapter.
+     */
+    public void notifyHeaderChanged(int section, Object payload) {
+        if (mAdapter != null) {
+            mAdapter.notifyHeaderChanged(section, payload);
+        }
+    }
+
+    /**
+     * Patch the view of an item in place if it is showing, without rebinding
+     * anything else or laying out the grid. See
+     * {@link StickyGridHeadersPayloadAdapter}.
+     * 
+     * @param position Adapter position of the item.
+     * @param payload Description of the change, passed on to the adapter, or
+     *            null to bind the item again.
+     */
+    public void notifyItemChanged(int position, Object payload) {
+        if (mAdapter != null) {
+            mAdapter.notifyItemChanged(position, payload);
+        }
+    }
+
+    /**
+     * Notify the grid that items were inserted into its adapter. Simple
+     * adapters only regroup the sections around the inserted range, so this
+     * is much cheaper than notifyDataSetChanged() for appending pages.
+     * 
+     * @param positionStart Adapter position of the first inserted item.
+     * @param itemCount Number of items inserted.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (mAdapter == null) {
+            return;
+        }
+
+        StickyGridHeadersBaseAdapter adapter = mAdapter.getWrappedAdapter();
+        if (adapter instanceof StickyGridHeadersSimpleAdapterWrapper) {
+            ((StickyGridHeadersSimpleAdapterWrapper)adapter).notifyItemRangeInserted(
+                    positionStart, itemCount);
+        } else {
+            mAdapter.updateCount();
+            mAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Notify the grid that items were removed from its adapter. Simple
+     * adapters only regroup the sections around the removed range.
+     * 
+     * @param positionStart Adapter position the first removed item was at.
+     * @param itemCount Number of items removed.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        if (mAdapter == null) {
+            return;
+        }
+
+        StickyGridHeadersBaseAdapter adapter = mAdapter.getWrappedAdapter();
+        if (adapter instanceof StickyGridHeadersSimpleAdapterWrapper) {
+            ((StickyGridHeadersSimpleAdapterWrapper)adapter).notifyItemRangeRemoved(
+                    positionStart, itemCount);
+        } else {
+            mAdapter.updateCount();
+            mAdapter.notifyDataSetChanged();
+        }
+    }
+
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
         mOnItemClickListener.onItemClick(parent, view,
-                mAdapter.translatePosition(position).mPosition, id);
+                StickyGridHeadersBaseAdapterWrapper.unpackPosition(mAdapter
+                        .translatePositionPacked(position)), id);
     }
 
     @Override
     public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
         return mOnItemLongClickListener.onItemLongClick(parent, view,
-                mAdapter.translatePosition(position).mPosition, id);
+                StickyGridHeadersBaseAdapterWrapper.unpackPosition(mAdapter
+                        .translatePositionPacked(position)), id);
     }
 
     @Override
     public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
         mOnItemSelectedListener.onItemSelected(parent, view,
-                mAdapter.translatePosition(position).mPosition, id);
+                StickyGridHeadersBaseAdapterWrapper.unpackPosition(mAdapter
+                        .translatePositionPacked(position)), id);
     }
 
     @Override
@@ -248,6 +669,13 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         super.onRestoreInstanceState(ss.getSuperState());
         mAreHeadersSticky = ss.areHeadersSticky;
 
+        // The superclass restores a GridView position, which moves with the
+        // column count, so scroll to the anchor instead on the next layout.
+        mAnchorPosition = ss.anchorPosition;
+        mAnchorOffset = ss.anchorOffset;
+        mAnchorSectionId = ss.anchorSectionId;
+        mAnchorHasSectionId = ss.anchorHasSectionId;
+
         requestLayout();
     }
 
@@ -257,6 +685,7 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
 
         SavedState ss = new SavedState(superState);
         ss.areHeadersSticky = mAreHeadersSticky;
+        saveAnchor(ss);
         return ss;
     }
 
@@ -267,6 +696,11 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             mScrollListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
         }
 
+        if (mJankMonitor != null) {
+            // Scrolls draw without laying out, so watch from the first frame.
+            mJankMonitor.watch();
+        }
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
             scrollChanged(firstVisibleItem);
         }
@@ -286,29 +720,66 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         final int action = ev.getAction() & MotionEvent.ACTION_MASK;
 
         if (action == MotionEvent.ACTION_DOWN) {
-            final int y = (int) ev.getY();
-            mMotionHeaderPosition = findMotionHeader(y);
+            mMotionY = ev.getY();
+            mMotionHeaderPosition = findMotionHeader(mMotionY);
+            if (mMotionHeaderPosition != NO_MATCHED_HEADER) {
+                mTouchMode = TOUCH_MODE_DOWN;
+                if (mOnHeaderLongClickListener != null) {
+                    postDelayed(mHeaderLongPress, ViewConfiguration.getLongPressTimeout());
+                }
+            }
         }
 
         if (mMotionHeaderPosition != NO_MATCHED_HEADER) {
             View tempHeader = getHeaderAt(mMotionHeaderPosition);
             if (tempHeader != null) {
-                tempHeader.dispatchTouchEvent(transformEvent(ev, mMotionHeaderPosition));
+                dispatchHeaderTouchEvent(tempHeader, ev, mMotionHeaderPosition);
+            }
+
+            switch (action) {
+                case MotionEvent.ACTION_MOVE:
+                    if (Math.abs(ev.getY() - mMotionY) > mTouchSlop) {
+                        // Scrolling, so this is no longer a press on the header.
+                        cancelHeaderPress();
+                    }
+                    break;
+                case MotionEvent.ACTION_UP:
+                    if (tempHeader != null && mTouchMode == TOUCH_MODE_DOWN) {
+                        performHeaderClick(tempHeader,
+                                headerViewPositionToId(mMotionHeaderPosition));
+                    }
+                    cancelHeaderPress();
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    cancelHeaderPress();
+                    break;
             }
         }
 
-        if (action == MotionEvent.ACTION_UP) {
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
             mMotionHeaderPosition = NO_MATCHED_HEADER;
         }
 
         return super.onTouchEvent(ev);
     }
 
+    @Override
+    public void requestLayout() {
+        super.requestLayout();
+        if (mJankMonitor != null) {
+            mJankMonitor.watch();
+        }
+    }
+
     @Override
     public void setAdapter(ListAdapter adapter) {
         if (mAdapter != null && mDataSetObserver != null) {
             mAdapter.unregisterDataSetObserver(mDataSetObserver);
         }
+        if (mAdapter != null) {
+            mAdapter.releasePrewarmedViews();
+        }
+        unschedulePrewarm();
 
         if (!mClipToPaddingHasBeenSet) {
             mClippingToPadding = true;
@@ -327,9 +798,14 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         }
 
         this.mAdapter = new StickyGridHeadersBaseAdapterWrapper(getContext(), this, baseAdapter);
+        this.mAdapter.setSectionExecutor(mSectionExecutor);
+        this.mAdapter.setFrameMetrics(mMetrics);
         this.mAdapter.registerDataSetObserver(mDataSetObserver);
         reset();
+        // Header views belong to the old adapter.
+        mStickiedHeaderScrap.clear();
         super.setAdapter(this.mAdapter);
+        schedulePrewarm();
     }
 
     public void setAreHeadersSticky(boolean useStickyHeaders) {
@@ -367,6 +843,63 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         mHorizontalSpacing = horizontalSpacing;
     }
 
+    /**
+     * Report frames that take longer than a budget, with the phases of the
+     * grid's work that ran in them: binds, measures, draws, stickied header
+     * swaps and regroups. Frames are timed with
+     * {@link android.view.Choreographer}, so this does nothing before API
+     * level 16.
+     * 
+     * @param listener Listener to report slow frames to, or null to stop
+     *            monitoring.
+     * @param frameBudgetNanos Frames whose start is more than this long after
+     *            the start of the frame before are reported. Allow for jitter,
+     *            for example one and a half refresh intervals.
+     */
+    public void setJankListener(OnJankListener listener, long frameBudgetNanos) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+
+        if (mJankMonitor != null) {
+            mJankMonitor.stop();
+            mJankMonitor = null;
+        }
+        if (listener == null) {
+            updateMetrics();
+            return;
+        }
+
+        if (mMetrics == null) {
+            mMetrics = new StickyGridHeadersFrameMetrics();
+        }
+        mJankMonitor = new StickyGridHeadersJankMonitor(this, listener, frameBudgetNanos,
+                mMetrics);
+        updateMetrics();
+        if (getWindowToken() != null) {
+            mJankMonitor.start();
+        }
+    }
+
+    /**
+     * Report the work done by the grid in each frame, such as binds, header
+     * measures and stickied header swaps. The figures are counted without
+     * allocating and delivered once per frame after it is drawn.
+     * 
+     * @param listener Listener to report to, or null to stop counting.
+     */
+    public void setMetricsListener(OnMetricsListener listener) {
+        mMetricsListener = listener;
+        updateMetrics();
+        if (listener != null) {
+            if (mFrameMetrics == null) {
+                mFrameMetrics = new StickyGridHeadersFrameMetrics();
+                mFrameMetricsStart = new StickyGridHeadersFrameMetrics();
+            }
+            mFrameMetricsStart.set(mMetrics);
+        }
+    }
+
     @Override
     public void setNumColumns(int numColumns) {
         super.setNumColumns(numColumns);
@@ -375,64 +908,317 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         if (numColumns != AUTO_FIT && mAdapter != null) {
             mAdapter.setNumColumns(numColumns);
         }
-    }
+    }
+
+    public void setOnHeaderClickListener(OnHeaderClickListener listener) {
+        mOnHeaderClickListener = listener;
+    }
+
+    public void setOnHeaderLongClickListener(OnHeaderLongClickListener listener) {
+        mOnHeaderLongClickListener = listener;
+    }
+
+    @Override
+    public void setOnItemClickListener(android.widget.AdapterView.OnItemClickListener listener) {
+        this.mOnItemClickListener = listener;
+        super.setOnItemClickListener(this);
+    }
+
+    @Override
+    public void setOnItemLongClickListener(
+            android.widget.AdapterView.OnItemLongClickListener listener) {
+        this.mOnItemLongClickListener = listener;
+        super.setOnItemLongClickListener(this);
+    }
+
+    @Override
+    public void setOnItemSelectedListener(android.widget.AdapterView.OnItemSelectedListener listener) {
+        this.mOnItemSelectedListener = listener;
+        super.setOnItemSelectedListener(this);
+    }
+
+    /**
+     * Create item, header and filler views ahead of time while the main thread
+     * is idle, so they are not created while scrolling. Views are created for
+     * the first items and sections found with each view type and pooled until
+     * the grid needs a view of that type.
+     * 
+     * @param itemsPerType Number of views to create for each item view type.
+     * @param headersPerType Number of views to create for each header view
+     *            type. See {@link StickyGridHeadersHeaderViewTypeAdapter}.
+     * @param fillersPerType Number of views to create for each kind of filler.
+     */
+    public void setPrewarmCounts(int itemsPerType, int headersPerType, int fillersPerType) {
+        mPrewarmItems = itemsPerType;
+        mPrewarmHeaders = headersPerType;
+        mPrewarmFillers = fillersPerType;
+        if (mAdapter != null) {
+            mAdapter.restartPrewarm();
+        }
+        schedulePrewarm();
+    }
+
+    @Override
+    public void setOnScrollListener(OnScrollListener listener) {
+        this.mScrollListener = listener;
+    }
+
+    /**
+     * If set to true, the stickied header is rendered once into a bitmap which
+     * is reused until the header id or width changes or the header view
+     * invalidates itself. The fade as the header is pushed off screen is then
+     * drawn with a paint alpha instead of an offscreen layer.
+     * 
+     * @param enabled if true, the stickied header is drawn from a snapshot
+     */
+    public void setStickiedHeaderCacheEnabled(boolean enabled) {
+        if (enabled == mStickiedHeaderCacheEnabled) {
+            return;
+        }
+        mStickiedHeaderCacheEnabled = enabled;
+        if (!enabled) {
+            releaseStickiedHeaderCache();
+        }
+        invalidate();
+    }
+
+    public void setStickyHeaderIsTranscluent(boolean isTranscluent) {
+        mMaskStickyHeaderRegion = !isTranscluent;
+    }
+
+    /**
+     * Compute sections on a background executor when the adapter's data
+     * changes. The grid keeps showing the previous sections until the new ones
+     * are ready, then updates once.
+     * 
+     * @param executor Executor to compute sections on, or null to compute them
+     *            synchronously.
+     */
+    public void setSectionExecutor(Executor executor) {
+        mSectionExecutor = executor;
+        if (mAdapter != null) {
+            mAdapter.setSectionExecutor(executor);
+        }
+    }
+
+    /**
+     * Select an item by its position in the adapter, scrolling it into view.
+     * 
+     * @param position Adapter position of the item.
+     */
+    public void setSelectionToAdapterPosition(int position) {
+        selectInGrid(SELECT_ADAPTER_POSITION, position);
+    }
+
+    /**
+     * Scroll a section's header to the top of the grid.
+     * 
+     * @param section Index of the section. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the index of
+     *            the header in order of appearance, not an item position.
+     */
+    public void setSelectionToSection(int section) {
+        selectInGrid(SELECT_SECTION, section);
+    }
+
+    @Override
+    public void setVerticalSpacing(int verticalSpacing) {
+        super.setVerticalSpacing(verticalSpacing);
+        mVerticalSpacing = verticalSpacing;
+    }
+
+    /**
+     * Smoothly scroll a section's header to the top of the grid.
+     * 
+     * @param section Index of the section. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the index of
+     *            the header in order of appearance, not an item position.
+     */
+    public void smoothScrollToSection(int section) {
+        selectInGrid(SELECT_SECTION_SMOOTHLY, section);
+    }
+
+    private int findMotionHeader(float y) {
+        if (mStickiedHeader != null && y <= mHeaderBottomPosition) {
+            return MATCHED_STICKIED_HEADER;
+        }
+
+        // Find the last header frame starting at or above y.
+        int lo = 0;
+        int hi = mNumHeaderFrames - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mHeaderTops[mid] <= y) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (hi >= 0 && mHeaderTops[lo] <= y && y <= mHeaderBottoms[lo]) {
+            return mHeaderChildIndexes[lo];
+        }
+        return NO_MATCHED_HEADER;
+    }
+
+    /**
+     * Select, or smoothly scroll to, a section header or an adapter position,
+     * mapped to its GridView position through the section index. If the
+     * number of columns is not yet known this is done once the grid has been
+     * measured.
+     */
+    private void selectInGrid(int kind, int value) {
+        if (mAdapter == null) {
+            return;
+        }
+        if (!mColumnsMeasured) {
+            mPendingSelectionKind = kind;
+            mPendingSelection = value;
+            requestLayout();
+            return;
+        }
+
+        int position;
+        if (kind == SELECT_ADAPTER_POSITION) {
+            position = mAdapter.getGridPosition(value);
+        } else {
+            position = mAdapter.getHeaderPosition(value);
+        }
+        if (position < 0) {
+            return;
+        }
 
-    @Override
-    public void setOnItemClickListener(android.widget.AdapterView.OnItemClickListener listener) {
-        this.mOnItemClickListener = listener;
-        super.setOnItemClickListener(this);
+        if (kind != SELECT_SECTION_SMOOTHLY) {
+            setSelection(position);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            smoothScrollToPositionFromTop(position, 0);
+        } else {
+            smoothScrollToPosition(position);
+        }
     }
 
-    @Override
-    public void setOnItemLongClickListener(
-            android.widget.AdapterView.OnItemLongClickListener listener) {
-        this.mOnItemLongClickListener = listener;
-        super.setOnItemLongClickListener(this);
+    /**
+     * Map the restored anchor to a GridView position. If the section at the
+     * anchor's position no longer has the anchor's section id, the section
+     * with that id is used instead.
+     */
+    private int resolveAnchor() {
+        int position = Math.min(mAnchorPosition, mAdapter.getWrappedAdapter().getCount() - 1);
+        if (mAnchorHasSectionId && mAdapter.hasSectionIds()) {
+            int section = mAdapter.getSectionForItem(position);
+            if (section < 0 || mAdapter.getSectionId(section) != mAnchorSectionId) {
+                section = mAdapter.findSection(mAnchorSectionId);
+                if (section >= 0) {
+                    mAnchorOffset = 0;
+                    return mAdapter.getHeaderPosition(section);
+                }
+            }
+        }
+        return mAdapter.getGridPosition(position);
     }
 
-    @Override
-    public void setOnItemSelectedListener(android.widget.AdapterView.OnItemSelectedListener listener) {
-        this.mOnItemSelectedListener = listener;
-        super.setOnItemSelectedListener(this);
+    /**
+     * Record the first visible item as the anchor to restore the scroll
+     * position from, independent of the number of columns.
+     */
+    private void saveAnchor(SavedState ss) {
+        ss.anchorPosition = -1;
+        if (mAdapter == null) {
+            return;
+        }
+
+        int firstPosition = getFirstVisiblePosition();
+        for (int i = 0, n = getChildCount(); i < n; i++) {
+            int position = mAdapter.getAdapterPosition(firstPosition + i);
+            if (position < 0) {
+                continue;
+            }
+
+            ss.anchorPosition = position;
+            ss.anchorOffset = getChildAt(i).getTop() - getPaddingTop();
+            if (mAdapter.hasSectionIds()) {
+                int section = mAdapter.getSectionForItem(position);
+                if (section >= 0) {
+                    ss.anchorHasSectionId = true;
+                    ss.anchorSectionId = mAdapter.getSectionId(section);
+                }
+            }
+            return;
+        }
     }
 
-    @Override
-    public void setOnScrollListener(OnScrollListener listener) {
-        this.mScrollListener = listener;
+    private void cancelHeaderPress() {
+        removeCallbacks(mHeaderLongPress);
+        mTouchMode = TOUCH_MODE_REST;
     }
 
-    public void setStickyHeaderIsTranscluent(boolean isTranscluent) {
-        mMaskStickyHeaderRegion = !isTranscluent;
+    /**
+     * Count a header measure, in the frame metrics too if they are on.
+     */
+    private void countHeaderMeasure() {
+        mHeaderMeasuresPerformed++;
+        if (mMetrics != null) {
+            mMetrics.mHeaderMeasures++;
+        }
     }
 
-    @Override
-    public void setVerticalSpacing(int verticalSpacing) {
-        super.setVerticalSpacing(verticalSpacing);
-        mVerticalSpacing = verticalSpacing;
+    /**
+     * Forward a touch event to a header. Events for headers in the list are
+     * shifted into the header frame's coordinates in place, and shifted back
+     * once dispatched, so no event is obtained or allocated.
+     */
+    void dispatchHeaderTouchEvent(View header, MotionEvent e, int headerPosition) {
+        if (headerPosition == MATCHED_STICKIED_HEADER) {
+            header.dispatchTouchEvent(e);
+            return;
+        }
+
+        float offsetY = getChildAt(headerPosition).getTop();
+        e.offsetLocation(0, -offsetY);
+        try {
+            header.dispatchTouchEvent(e);
+        } finally {
+            e.offsetLocation(0, offsetY);
+        }
     }
 
-    private int findMotionHeader(float y) {
-        if (mStickiedHeader != null && y <= mHeaderBottomPosition) {
-            return MATCHED_STICKIED_HEADER;
+    private void drawStickiedHeaderCache(Canvas canvas, int alpha) {
+        int width = mStickiedHeader.getWidth();
+        int height = mStickiedHeader.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
         }
 
-        int vi = 0;
-        for (int i = getFirstVisiblePosition(); i <= getLastVisiblePosition();) {
-            long id = getItemIdAtPosition(i);
-            if (id == StickyGridHeadersBaseAdapterWrapper.ID_HEADER) {
-                View headerWrapper = getChildAt(vi);
+        Bitmap cache = mStickiedHeaderCache;
+        boolean stale = cache == null || mStickiedHeaderCacheId != mCurrentHeaderId
+                || cache.getWidth() != width || cache.getHeight() != height
+                || mStickiedHeader.isLayoutRequested();
+        if (!stale && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            stale = mStickiedHeader.isDirty();
+        }
 
-                int bottom = headerWrapper.getBottom();
-                int top = headerWrapper.getTop();
-                if (y <= bottom && y >= top) {
-                    return vi;
-                }
+        if (stale) {
+            if (cache == null || cache.getWidth() != width || cache.getHeight() != height) {
+                releaseStickiedHeaderCache();
+                cache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mStickiedHeaderCache = cache;
+                mStickiedHeaderCacheCanvas.setBitmap(cache);
+            } else {
+                cache.eraseColor(Color.TRANSPARENT);
             }
-            i += mNumMeasuredColumns;
-            vi += mNumMeasuredColumns;
+            mStickiedHeader.draw(mStickiedHeaderCacheCanvas);
+            mStickiedHeaderCacheId = mCurrentHeaderId;
         }
 
-        return NO_MATCHED_HEADER;
+        mStickiedHeaderCachePaint.setAlpha(alpha);
+        canvas.drawBitmap(cache, 0, 0, mStickiedHeaderCachePaint);
+    }
+
+    private int getChildDistance(View child) {
+        if (mClippingToPadding) {
+            return child.getTop() - getPaddingTop();
+        }
+        return child.getTop();
     }
 
     private int getHeaderHeight() {
@@ -470,7 +1256,18 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         } else {
             heightMeasureSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
         }
-        mStickiedHeader.measure(MeasureSpec.makeMeasureSpec(0,0), MeasureSpec.makeMeasureSpec(0,0));
+
+        if (mStickiedHeaderMeasured == mStickiedHeader
+                && mStickiedHeaderWidthSpec == widthMeasureSpec
+                && mStickiedHeaderHeightSpec == heightMeasureSpec
+                && !mStickiedHeader.isLayoutRequested()) {
+            mHeaderMeasuresSkipped++;
+            return;
+        }
+        countHeaderMeasure();
+
+        // Force the measure through even if the view thinks it is unchanged.
+        mStickiedHeader.forceLayout();
         mStickiedHeader.measure(widthMeasureSpec, heightMeasureSpec);
 
         if (mHeadersIgnorePadding) {
@@ -479,14 +1276,112 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             mStickiedHeader.layout(getLeft() + getPaddingLeft(), 0, getRight() - getPaddingRight(),
                     mStickiedHeader.getMeasuredHeight());
         }
+
+        mStickiedHeaderMeasured = mStickiedHeader;
+        mStickiedHeaderWidthSpec = widthMeasureSpec;
+        mStickiedHeaderHeightSpec = heightMeasureSpec;
+    }
+
+    /**
+     * Get a stickied header view of the given type to rebind. The current
+     * stickied header is put aside if it is of a different type.
+     */
+    private View obtainStickiedHeaderScrap(int headerViewType) {
+        View convertView;
+        if (mStickiedHeader != null && mStickiedHeaderViewType == headerViewType) {
+            convertView = mStickiedHeader;
+        } else {
+            if (mStickiedHeader != null) {
+                mStickiedHeaderScrap.put(mStickiedHeaderViewType, mStickiedHeader);
+            }
+            convertView = mStickiedHeaderScrap.get(headerViewType);
+            mStickiedHeaderScrap.remove(headerViewType);
+        }
+
+        if (convertView == null) {
+            mStickiedHeaderRecycleMisses++;
+        } else {
+            mStickiedHeaderRecycleHits++;
+        }
+        return convertView;
+    }
+
+    private boolean performHeaderClick(View view, long id) {
+        if (mOnHeaderClickListener == null) {
+            return false;
+        }
+        playSoundEffect(SoundEffectConstants.CLICK);
+        view.sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_CLICKED);
+        mOnHeaderClickListener.onHeaderClick(this, view, id);
+        return true;
+    }
+
+    private boolean performHeaderLongPress(View view, long id) {
+        if (mOnHeaderLongClickListener == null
+                || !mOnHeaderLongClickListener.onHeaderLongClick(this, view, id)) {
+            return false;
+        }
+        performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        return true;
+    }
+
+    private void releaseStickiedHeaderCache() {
+        if (mStickiedHeaderCache != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Older platforms do not accept a null bitmap.
+                mStickiedHeaderCacheCanvas.setBitmap(null);
+            }
+            mStickiedHeaderCache.recycle();
+            mStickiedHeaderCache = null;
+        }
+        mStickiedHeaderCacheId = INVALID_ROW_ID;
     }
 
     private void reset() {
+        if (mStickiedHeader != null) {
+            // Keep the header view to rebind once the data has settled.
+            mStickiedHeaderScrap.put(mStickiedHeaderViewType, mStickiedHeader);
+        }
         mHeaderBottomPosition = 0;
         swapStickiedHeader(null);
         mCurrentHeaderId = INVALID_ROW_ID;
     }
 
+    private void schedulePrewarm() {
+        if (mPrewarmScheduled || mAdapter == null || getWindowToken() == null) {
+            return;
+        }
+        if (mPrewarmItems <= 0 && mPrewarmHeaders <= 0 && mPrewarmFillers <= 0) {
+            return;
+        }
+        Looper.myQueue().addIdleHandler(mPrewarmHandler);
+        mPrewarmScheduled = true;
+    }
+
+    /**
+     * Turn counting on while a metrics listener or jank monitor needs it.
+     * 
+     * @return The running totals, or null if counting is off.
+     */
+    private StickyGridHeadersFrameMetrics updateMetrics() {
+        if (mMetricsListener == null && mJankMonitor == null) {
+            mMetrics = null;
+        } else if (mMetrics == null) {
+            mMetrics = new StickyGridHeadersFrameMetrics();
+        }
+        if (mAdapter != null) {
+            mAdapter.setFrameMetrics(mMetrics);
+        }
+        return mMetrics;
+    }
+
+    private void unschedulePrewarm() {
+        if (mPrewarmScheduled) {
+            Looper.myQueue().removeIdleHandler(mPrewarmHandler);
+            mPrewarmScheduled = false;
+        }
+    }
+
     private void scrollChanged(int firstVisibleItem) {
         if (mAdapter == null || mAdapter.getCount() == 0 || !mAreHeadersSticky) {
             return;
@@ -497,72 +1392,57 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             return;
         }
 
-        long newHeaderId;
         int selectedHeaderPosition = firstVisibleItem;
-
-        int beforeRowPosition = firstVisibleItem - mNumMeasuredColumns;
-        if (beforeRowPosition < 0) {
-            beforeRowPosition = firstVisibleItem;
-        }
-
-        int secondRowPosition = firstVisibleItem + mNumMeasuredColumns;
-        if (secondRowPosition >= mAdapter.getCount()) {
-            secondRowPosition = firstVisibleItem;
-        }
-
-        if (mVerticalSpacing == 0) {
-            newHeaderId = mAdapter.getHeaderId(firstVisibleItem);
-        } else if (mVerticalSpacing < 0) {
-            newHeaderId = mAdapter.getHeaderId(firstVisibleItem);
+        if (mVerticalSpacing < 0) {
             View firstSecondRowView = getChildAt(mNumMeasuredColumns);
-            if (firstSecondRowView.getTop() <= 0) {
-                newHeaderId = mAdapter.getHeaderId(secondRowPosition);
+            int secondRowPosition = firstVisibleItem + mNumMeasuredColumns;
+            if (firstSecondRowView != null && firstSecondRowView.getTop() <= 0
+                    && secondRowPosition < mAdapter.getCount()) {
                 selectedHeaderPosition = secondRowPosition;
-            } else {
-                newHeaderId = mAdapter.getHeaderId(firstVisibleItem);
             }
-        } else {
-            int margin = getChildAt(0).getTop();
-            if (0 < margin && margin < mVerticalSpacing) {
-                newHeaderId = mAdapter.getHeaderId(beforeRowPosition);
-                selectedHeaderPosition = beforeRowPosition;
-            } else {
-                newHeaderId = mAdapter.getHeaderId(firstVisibleItem);
+        } else if (mVerticalSpacing > 0) {
+            int margin = firstItem.getTop();
+            if (0 < margin && margin < mVerticalSpacing
+                    && firstVisibleItem - mNumMeasuredColumns >= 0) {
+                selectedHeaderPosition = firstVisibleItem - mNumMeasuredColumns;
             }
         }
 
+        // Header ids are section indexes, so each lookup is one binary search.
+        long firstHeaderId = mAdapter.getHeaderId(firstVisibleItem);
+        long newHeaderId = selectedHeaderPosition == firstVisibleItem ? firstHeaderId
+                : mAdapter.getHeaderId(selectedHeaderPosition);
+
         if (mCurrentHeaderId != newHeaderId) {
-            swapStickiedHeader(mAdapter
-                    .getHeaderView(selectedHeaderPosition, mStickiedHeader, this));
+            long start = mMetrics != null ? System.nanoTime() : 0;
+            int headerViewType = mAdapter.getHeaderViewTypeForPosition(selectedHeaderPosition);
+            View convertView = obtainStickiedHeaderScrap(headerViewType);
+            swapStickiedHeader(mAdapter.getHeaderView(selectedHeaderPosition, convertView, this));
+            mStickiedHeaderViewType = headerViewType;
             measureHeader();
             mCurrentHeaderId = newHeaderId;
+            if (mMetrics != null) {
+                mMetrics.mStickiedHeaderSwapNanos += System.nanoTime() - start;
+                mMetrics.mStickiedHeaderSwaps++;
+                mMetrics.addSectionId(mAdapter.getReportedSectionId((int)newHeaderId));
+            }
         }
 
         final int childCount = getChildCount();
         if (childCount != 0) {
-            View viewToWatch = null;
-            int watchingChildDistance = 99999;
-
-            // Find the next header after the stickied one.
-            for (int i = 0; i < childCount; i += mNumMeasuredColumns) {
-                View child = super.getChildAt(i);
-
-                int childDistance;
-                if (mClippingToPadding) {
-                    childDistance = child.getTop() - getPaddingTop();
-                } else {
-                    childDistance = child.getTop();
-                }
-
-                if (childDistance < 0) {
-                    continue;
-                }
+            // Watch the first header at or below the top edge. That is the
+            // header of the first visible section if it starts the first row,
+            // otherwise the header of the section after it.
+            int firstSection = (int)firstHeaderId;
+            int watchPosition = mAdapter.getHeaderPosition(firstSection);
+            if (watchPosition != firstVisibleItem || getChildDistance(firstItem) < 0) {
+                watchPosition = mAdapter.getHeaderPosition(firstSection + 1);
+            }
 
-                if (mAdapter.getItemId(getPositionForView(child)) == StickyGridHeadersBaseAdapterWrapper.ID_HEADER
-                        && childDistance < watchingChildDistance) {
-                    viewToWatch = child;
-                    watchingChildDistance = childDistance;
-                }
+            View viewToWatch = null;
+            if (watchPosition >= firstVisibleItem
+                    && watchPosition - firstVisibleItem < childCount) {
+                viewToWatch = super.getChildAt(watchPosition - firstVisibleItem);
             }
 
             int headerHeight = getHeaderHeight();
@@ -596,40 +1476,15 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
     }
 
     private void swapStickiedHeader(View newStickiedHeader) {
+        if (newStickiedHeader == mStickiedHeader) {
+            // Same instance rebound, so it is already attached.
+            return;
+        }
         detachHeader(mStickiedHeader);
         attachHeader(newStickiedHeader);
         mStickiedHeader = newStickiedHeader;
     }
 
-    private MotionEvent transformEvent(MotionEvent e, int headerPosition) {
-        if (headerPosition == MATCHED_STICKIED_HEADER) {
-            return e;
-        }
-
-        long downTime = e.getDownTime();
-        long eventTime = e.getEventTime();
-        int action = e.getAction();
-        int pointerCount = e.getPointerCount();
-        int[] pointerIds = getPointerIds(e);
-        MotionEvent.PointerCoords[] pointerCoords = getPointerCoords(e);
-        int metaState = e.getMetaState();
-        float xPrecision = e.getXPrecision();
-        float yPrecision = e.getYPrecision();
-        int deviceId = e.getDeviceId();
-        int edgeFlags = e.getEdgeFlags();
-        int source = e.getSource();
-        int flags = e.getFlags();
-
-        View headerHolder = getChildAt(headerPosition);
-        for (int i = 0; i < pointerCount;i++) {
-            pointerCoords[i].y -= headerHolder.getTop();
-        }
-        MotionEvent n = MotionEvent.obtain(downTime, eventTime, action,
-                pointerCount, pointerIds, pointerCoords, metaState, xPrecision,
-                yPrecision, deviceId, edgeFlags, source, flags);
-        return n;
-    }
-
     @Override
     protected void dispatchDraw(Canvas canvas) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
@@ -661,21 +1516,30 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         // ...and draw the grid view.
         super.dispatchDraw(canvas);
 
-        // Find headers.
-        List<Integer> headerPositions = new ArrayList<Integer>();
-        int vi = 0;
-        for (int i = getFirstVisiblePosition(); i <= getLastVisiblePosition();) {
-            long id = getItemIdAtPosition(i);
-            if (id == StickyGridHeadersBaseAdapterWrapper.ID_HEADER) {
-                headerPositions.add(vi);
+        // Find headers. There can be at most one per visible row.
+        int numHeaders = 0;
+        if (mAdapter != null) {
+            int maxRows = getChildCount() / Math.max(mNumMeasuredColumns, 1) + 1;
+            if (mHeaderChildIndexes.length < maxRows) {
+                mHeaderChildIndexes = new int[maxRows];
+                mHeaderTops = new int[maxRows];
+                mHeaderBottoms = new int[maxRows];
             }
-            i += mNumMeasuredColumns;
-            vi += mNumMeasuredColumns;
+            numHeaders = mAdapter.findHeaderPositions(getFirstVisiblePosition(),
+                    getLastVisiblePosition(), mHeaderChildIndexes);
         }
 
+        // Record header frame geometry for hit testing touches.
+        for (int i = 0; i < numHeaders; i++) {
+            View frame = getChildAt(mHeaderChildIndexes[i]);
+            mHeaderTops[i] = frame.getTop();
+            mHeaderBottoms[i] = frame.getBottom();
+        }
+        mNumHeaderFrames = numHeaders;
+
         // Draw headers in list.
-        for (int i = 0; i < headerPositions.size(); i++) {
-            View frame = getChildAt(headerPositions.get(i));
+        for (int i = 0; i < numHeaders; i++) {
+            View frame = getChildAt(mHeaderChildIndexes[i]);
             View header;
             try {
                 header = (View)frame.getTag();
@@ -697,15 +1561,23 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
                         - getPaddingRight(), MeasureSpec.EXACTLY);
             }
 
-            int heightMeasureSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
-            header.measure(MeasureSpec.makeMeasureSpec(0,0),MeasureSpec.makeMeasureSpec(0,0));
-            header.measure(widthMeasureSpec, heightMeasureSpec);
-
-            if (mHeadersIgnorePadding) {
-                header.layout(getLeft(), 0, getRight(), frame.getHeight());
+            HeaderFillerView headerFrame = (HeaderFillerView)frame;
+            int frameHeight = frame.getHeight();
+            if (headerFrame.isHeaderLayoutValid(header, widthMeasureSpec, frameHeight)) {
+                mHeaderMeasuresSkipped++;
             } else {
-                header.layout(getLeft() + getPaddingLeft(), 0, getRight() - getPaddingRight(),
-                        frame.getHeight());
+                countHeaderMeasure();
+                int heightMeasureSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+                header.forceLayout();
+                header.measure(widthMeasureSpec, heightMeasureSpec);
+
+                if (mHeadersIgnorePadding) {
+                    header.layout(getLeft(), 0, getRight(), frameHeight);
+                } else {
+                    header.layout(getLeft() + getPaddingLeft(), 0, getRight() - getPaddingRight(),
+                            frameHeight);
+                }
+                headerFrame.setHeaderLayout(header, widthMeasureSpec, frameHeight);
             }
 
             if (mHeadersIgnorePadding) {
@@ -744,22 +1616,9 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             wantedWidth = getWidth() - getPaddingLeft() - getPaddingRight();
         }
         if (mStickiedHeader.getWidth() != wantedWidth) {
-            int widthMeasureSpec;
-            if (mHeadersIgnorePadding) {
-                widthMeasureSpec = MeasureSpec.makeMeasureSpec(getWidth(), MeasureSpec.EXACTLY);
-            } else {
-                widthMeasureSpec = MeasureSpec.makeMeasureSpec(getWidth() - getPaddingLeft()
-                        - getPaddingRight(), MeasureSpec.EXACTLY); // Bug here
-            }
-            int heightMeasureSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
-            mStickiedHeader.measure(MeasureSpec.makeMeasureSpec(0,0),MeasureSpec.makeMeasureSpec(0,0));
-            mStickiedHeader.measure(widthMeasureSpec, heightMeasureSpec);
-            if (mHeadersIgnorePadding) {
-                mStickiedHeader.layout(getLeft(), 0, getRight(), mStickiedHeader.getHeight());
-            } else {
-                mStickiedHeader.layout(getLeft() + getPaddingLeft(), 0, getRight()
-                        - getPaddingRight(), mStickiedHeader.getHeight());
-            }
+            // Header was laid out before the grid knew its width.
+            mStickiedHeaderMeasured = null;
+            measureHeader();
         }
 
         if (mHeadersIgnorePadding) {
@@ -785,6 +1644,18 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             canvas.translate(getPaddingLeft(), top);
         }
 
+        if (mStickiedHeaderCacheEnabled) {
+            // Snapshot is drawn under the existing translate and clip, so the
+            // fade needs no offscreen layer.
+            int alpha = 255;
+            if (mHeaderBottomPosition != headerHeight) {
+                alpha = 255 * mHeaderBottomPosition / headerHeight;
+            }
+            drawStickiedHeaderCache(canvas, alpha);
+            canvas.restore();
+            return;
+        }
+
         if (mHeaderBottomPosition != headerHeight) {
             canvas.saveLayerAlpha(0, 0, canvas.getWidth(), canvas.getHeight(), 255
                     * mHeaderBottomPosition / headerHeight, Canvas.ALL_SAVE_FLAG);
@@ -798,6 +1669,61 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         canvas.restore();
     }
 
+    @Override
+    protected void handleDataChanged() {
+        super.handleDataChanged();
+
+        if (mAnchorPosition < 0 || mAdapter == null
+                || mAdapter.getWrappedAdapter().getCount() == 0) {
+            return;
+        }
+        // Columns are measured by now, so the anchor maps to the layout about
+        // to be made. Selecting here replaces the superclass's restored
+        // position before anything is laid out at it.
+        int position = resolveAnchor();
+        mAnchorPosition = -1;
+        if (position >= 0) {
+            setSelection(position);
+            mAnchorScrollPending = mAnchorOffset != 0;
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+
+        if (mAnchorScrollPending) {
+            // Restore the anchor's offset within its row before anything is
+            // drawn. Laying out again keeps the shifted first row where it is
+            // and fills any gap the shift opened at the bottom.
+            mAnchorScrollPending = false;
+            for (int i = 0, n = getChildCount(); i < n; i++) {
+                getChildAt(i).offsetTopAndBottom(mAnchorOffset);
+            }
+            super.layoutChildren();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        schedulePrewarm();
+        if (mJankMonitor != null) {
+            mJankMonitor.start();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        unschedulePrewarm();
+        if (mJankMonitor != null) {
+            mJankMonitor.stop();
+        }
+        cancelHeaderPress();
+        releaseStickiedHeaderCache();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mNumColumns == AUTO_FIT) {
@@ -838,10 +1764,50 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         if (mAdapter != null) {
             mAdapter.setNumColumns(mNumMeasuredColumns);
         }
+        mColumnsMeasured = true;
+        if (mPendingSelectionKind != SELECT_NONE) {
+            int kind = mPendingSelectionKind;
+            mPendingSelectionKind = SELECT_NONE;
+            selectInGrid(kind, mPendingSelection);
+        }
 
+        long start = mMetrics != null ? System.nanoTime() : 0;
         measureHeader();
 
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (mMetrics != null) {
+            mMetrics.mMeasureNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return Index of the section whose header is stickied, or -1 if there is
+     *         none.
+     */
+    int getStickiedSection() {
+        if (mStickiedHeader == null) {
+            return -1;
+        }
+        return (int)mCurrentHeaderId;
+    }
+
+    /**
+     * Bind the stickied header again from the adapter.
+     */
+    void rebindStickiedHeader() {
+        mCurrentHeaderId = INVALID_ROW_ID;
+        mStickiedHeaderMeasured = null;
+        scrollChanged(getFirstVisiblePosition());
+        invalidateStickiedHeaderCache();
+    }
+
+    /**
+     * Measure the stickied header again if it has requested layout, and redraw
+     * it, after it was changed in place.
+     */
+    void refreshStickiedHeader() {
+        measureHeader();
+        invalidateStickiedHeaderCache();
     }
 
     void attachHeader(View header) {
@@ -849,25 +1815,16 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             return;
         }
 
+        resolveHeaderHooks();
         try {
-            Field attachInfoField = View.class.getDeclaredField("mAttachInfo");
-            attachInfoField.setAccessible(true);
-            Method method = View.class.getDeclaredMethod("dispatchAttachedToWindow",
-                    Class.forName("android.view.View$AttachInfo"), Integer.TYPE);
-            method.setAccessible(true);
-            method.invoke(header, attachInfoField.get(this), View.GONE);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimePlatformSupportException(e);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimePlatformSupportException(e);
+            countReflectiveCall();
+            sDispatchAttachedToWindow.invoke(header, sAttachInfoField.get(this), View.GONE);
         } catch (IllegalArgumentException e) {
             throw new RuntimePlatformSupportException(e);
         } catch (IllegalAccessException e) {
             throw new RuntimePlatformSupportException(e);
         } catch (InvocationTargetException e) {
             throw new RuntimePlatformSupportException(e);
-        } catch (NoSuchFieldException e) {
-            throw new RuntimePlatformSupportException(e);
         }
     }
 
@@ -876,12 +1833,10 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             return;
         }
 
+        resolveHeaderHooks();
         try {
-            Method method = View.class.getDeclaredMethod("dispatchDetachedFromWindow");
-            method.setAccessible(true);
-            method.invoke(header);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimePlatformSupportException(e);
+            countReflectiveCall();
+            sDispatchDetachedFromWindow.invoke(header);
         } catch (IllegalArgumentException e) {
             throw new RuntimePlatformSupportException(e);
         } catch (IllegalAccessException e) {
@@ -891,6 +1846,65 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         }
     }
 
+    private void countReflectiveCall() {
+        mReflectiveCalls++;
+        if (mMetrics != null) {
+            mMetrics.mReflectiveCalls++;
+        }
+    }
+
+    /**
+     * Look up the hidden View members used to attach and detach headers. The
+     * handles are cached statically as they are the same for every instance.
+     */
+    private void resolveHeaderHooks() {
+        if (sDispatchDetachedFromWindow != null) {
+            return;
+        }
+
+        try {
+            Field attachInfoField = View.class.getDeclaredField("mAttachInfo");
+            attachInfoField.setAccessible(true);
+            Method attached = View.class.getDeclaredMethod("dispatchAttachedToWindow",
+                    Class.forName("android.view.View$AttachInfo"), Integer.TYPE);
+            attached.setAccessible(true);
+            Method detached = View.class.getDeclaredMethod("dispatchDetachedFromWindow");
+            detached.setAccessible(true);
+
+            sAttachInfoField = attachInfoField;
+            sDispatchAttachedToWindow = attached;
+            sDispatchDetachedFromWindow = detached;
+        } catch (NoSuchMethodException e) {
+            throw new RuntimePlatformSupportException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimePlatformSupportException(e);
+        } catch (NoSuchFieldException e) {
+            throw new RuntimePlatformSupportException(e);
+        }
+    }
+
+    /**
+     * Fires the header long click listener if the press on a header was not
+     * released or cancelled first.
+     */
+    private final class CheckForHeaderLongPress implements Runnable {
+        @Override
+        public void run() {
+            if (mTouchMode != TOUCH_MODE_DOWN || mMotionHeaderPosition == NO_MATCHED_HEADER) {
+                return;
+            }
+
+            View header = getHeaderAt(mMotionHeaderPosition);
+            if (header != null
+                    && performHeaderLongPress(header,
+                            headerViewPositionToId(mMotionHeaderPosition))) {
+                mTouchMode = TOUCH_MODE_FINISHED_LONG_PRESS;
+            } else {
+                mTouchMode = TOUCH_MODE_DONE_WAITING;
+            }
+        }
+    }
+
     public interface OnHeaderClickListener {
         void onHeaderClick(AdapterView<?> parent, View view, long id);
     }
@@ -899,6 +1913,22 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         boolean onHeaderLongClick(AdapterView<?> parent, View view, long id);
     }
 
+    public interface OnJankListener {
+        /**
+         * Called on the UI thread at the start of the frame after a slow one.
+         * The record is reused once this returns.
+         */
+        void onJankFrame(AdapterView<?> parent, StickyGridHeadersJankRecord record);
+    }
+
+    public interface OnMetricsListener {
+        /**
+         * Called on the UI thread after each frame is drawn. The metrics
+         * object is reset and reused once this returns.
+         */
+        void onFrameMetrics(AdapterView<?> parent, StickyGridHeadersFrameMetrics metrics);
+    }
+
     class RuntimePlatformSupportException extends RuntimeException {
         private static final long serialVersionUID = -6512098808936536538L;
 
@@ -923,6 +1953,14 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
             }
         };
 
+        boolean anchorHasSectionId;
+
+        int anchorOffset;
+
+        int anchorPosition = -1;
+
+        long anchorSectionId;
+
         boolean areHeadersSticky;
 
         public SavedState(Parcelable superState) {
@@ -935,19 +1973,29 @@ public class StickyGridHeadersGridView extends GridView implements OnScrollListe
         private SavedState(Parcel in) {
             super(in);
             areHeadersSticky = in.readByte() != 0;
+            anchorPosition = in.readInt();
+            anchorOffset = in.readInt();
+            anchorHasSectionId = in.readByte() != 0;
+            anchorSectionId = in.readLong();
         }
 
         @Override
         public String toString() {
             return "StickyGridHeadersGridView.SavedState{"
                     + Integer.toHexString(System.identityHashCode(this)) + " areHeadersSticky="
-                    + areHeadersSticky + "}";
+                    + areHeadersSticky + " anchorPosition=" + anchorPosition + " anchorOffset="
+                    + anchorOffset + " anchorHasSectionId=" + anchorHasSectionId
+                    + " anchorSectionId=" + anchorSectionId + "}";
         }
 
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
             out.writeByte((byte)(areHeadersSticky ? 1 : 0));
+            out.writeInt(anchorPosition);
+            out.writeInt(anchorOffset);
+            out.writeByte((byte)(anchorHasSectionId ? 1 : 0));
+            out.writeLong(anchorSectionId);
         }
     }
 }
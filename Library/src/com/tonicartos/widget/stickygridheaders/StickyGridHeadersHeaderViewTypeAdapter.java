@@ -0,0 +1,52 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * Optional interface for a {@link StickyGridHeadersBaseAdapter} or
+ * {@link StickyGridHeadersSimpleAdapter} whose headers use more than one
+ * layout. Header views are recycled separately for each type, so the
+ * convertView passed to getHeaderView() is always a view that was created for
+ * a header of the same type.
+ * 
+ * @author Tonic Artos
+ */
+public interface StickyGridHeadersHeaderViewTypeAdapter {
+    /**
+     * Get the type of View that will be created by getHeaderView() for the
+     * specified header.
+     * 
+     * @param position
+     *            The position passed to getHeaderView(). For a
+     *            {@link StickyGridHeadersBaseAdapter} this is the position of
+     *            the header within the adapter's header data set. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the position of
+     *            the first item with the header.
+     * @return An integer representing the type of header View, between 0 and
+     *         getHeaderViewTypeCount() - 1.
+     */
+    int getHeaderViewType(int position);
+
+    /**
+     * Get the number of types of View that will be created by
+     * getHeaderView(). This must not change while the adapter is set on a
+     * grid.
+     * 
+     * @return The number of types of header View, at least 1.
+     */
+    int getHeaderViewTypeCount();
+}
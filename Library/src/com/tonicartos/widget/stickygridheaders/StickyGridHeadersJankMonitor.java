@@ -0,0 +1,143 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package com.tonicartos.widget.stickygridheaders;
+
+import android.view.Choreographer;
+
+/**
+ * Watches frame start times while a grid is changing and reports frames that
+ * overran their budget with the work the grid did in them. Frame callbacks are
+ * only requested while the grid lays out or draws, so an idle grid costs
+ * nothing. Requires API level 16 for {@link Choreographer}.
+ * 
+ * @author Tonic Artos
+ */
+final class StickyGridHeadersJankMonitor implements Choreographer.FrameCallback {
+    private final long mBudgetNanos;
+
+    private boolean mDrawn;
+
+    /**
+     * Copy of the running totals taken when the grid last finished drawing.
+     */
+    private final StickyGridHeadersFrameMetrics mDrawnTotals =
+            new StickyGridHeadersFrameMetrics();
+
+    private final StickyGridHeadersGridView mGridView;
+
+    /**
+     * Start of the frame being watched, or 0 if there is none.
+     */
+    private long mLastFrameTimeNanos;
+
+    private final StickyGridHeadersGridView.OnJankListener mListener;
+
+    private boolean mPosted;
+
+    private final StickyGridHeadersJankRecord mRecord = new StickyGridHeadersJankRecord();
+
+    private boolean mStarted;
+
+    /**
+     * Copy of the running totals taken when the grid finished drawing the
+     * frame before the one being watched.
+     */
+    private final StickyGridHeadersFrameMetrics mStart = new StickyGridHeadersFrameMetrics();
+
+    private final StickyGridHeadersFrameMetrics mTotals;
+
+    StickyGridHeadersJankMonitor(StickyGridHeadersGridView gridView,
+            StickyGridHeadersGridView.OnJankListener listener, long budgetNanos,
+            StickyGridHeadersFrameMetrics totals) {
+        mGridView = gridView;
+        mListener = listener;
+        mBudgetNanos = budgetNanos;
+        mTotals = totals;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+        if (!mStarted) {
+            return;
+        }
+
+        boolean watching = mLastFrameTimeNanos != 0;
+        if (watching) {
+            long interval = frameTimeNanos - mLastFrameTimeNanos;
+            if (interval > mBudgetNanos) {
+                // Work done after the frame last drew, such as input handled
+                // for this frame, is left to this frame's record.
+                mRecord.set(mLastFrameTimeNanos, interval, mBudgetNanos,
+                        mDrawn ? mDrawnTotals : mTotals, mStart);
+                mListener.onJankFrame(mGridView, mRecord);
+            }
+        }
+
+        // Keep watching while the grid keeps drawing. A frame requested by a
+        // layout is always watched, even before it has drawn.
+        if (watching && !mDrawn) {
+            mLastFrameTimeNanos = 0;
+            return;
+        }
+        mDrawn = false;
+        mLastFrameTimeNanos = frameTimeNanos;
+        // The frame's work started when the grid last finished drawing.
+        mStart.set(mDrawnTotals);
+        post();
+    }
+
+    /**
+     * Called after the grid has drawn.
+     */
+    void onDraw() {
+        mDrawn = true;
+        mDrawnTotals.set(mTotals);
+        watch();
+    }
+
+    void start() {
+        mStarted = true;
+        mLastFrameTimeNanos = 0;
+        mDrawnTotals.set(mTotals);
+        watch();
+    }
+
+    void stop() {
+        mStarted = false;
+        if (mPosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mPosted = false;
+        }
+    }
+
+    /**
+     * Watch the next frame, for when the grid is about to change. If called
+     * while input is handled, the frame being built is watched.
+     */
+    void watch() {
+        if (mStarted && !mPosted) {
+            post();
+        }
+    }
+
+    private void post() {
+        mPosted = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * A frame that took longer than its budget, with the work the grid did in it.
+ * Instances are reused, so read the record in
+ * {@link StickyGridHeadersGridView.OnJankListener#onJankFrame} and do not keep
+ * a reference.
+ * 
+ * @author Tonic Artos
+ */
+public final class StickyGridHeadersJankRecord {
+    /**
+     * Items, headers or fillers were bound.
+     */
+    public static final int PHASE_BIND = 0x01;
+
+    /**
+     * The grid was drawn.
+     */
+    public static final int PHASE_DRAW = 0x04;
+
+    /**
+     * The grid was measured.
+     */
+    public static final int PHASE_MEASURE = 0x02;
+
+    /**
+     * Sections were regrouped after a data set or column change.
+     */
+    public static final int PHASE_REGROUP = 0x10;
+
+    /**
+     * The stickied header changed section.
+     */
+    public static final int PHASE_STICKY_SWAP = 0x08;
+
+    private static final String[] sPhaseNames = {
+            "bind", "measure", "draw", "stickySwap", "regroup"
+    };
+
+    private long mBudgetNanos;
+
+    private long mFrameIntervalNanos;
+
+    private long mFrameTimeNanos;
+
+    private final StickyGridHeadersFrameMetrics mMetrics = new StickyGridHeadersFrameMetrics();
+
+    StickyGridHeadersJankRecord() {
+    }
+
+    public long getBudgetNanos() {
+        return mBudgetNanos;
+    }
+
+    /**
+     * @return Time from the start of the slow frame to the start of the next
+     *         frame, in nanoseconds.
+     */
+    public long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    /**
+     * @return Start of the slow frame, in the {@link System#nanoTime()} time
+     *         base.
+     */
+    public long getFrameTimeNanos() {
+        return mFrameTimeNanos;
+    }
+
+    /**
+     * @return Counts and timings of the work done by the grid in the slow
+     *         frame.
+     */
+    public StickyGridHeadersFrameMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @param phase One of the PHASE_ constants.
+     * @return Time spent in the phase during the slow frame, in nanoseconds.
+     *         Binds happen while the grid is laid out, and sticky swaps while
+     *         it is drawn, so phases may overlap.
+     */
+    public long getPhaseNanos(int phase) {
+        switch (phase) {
+            case PHASE_BIND:
+                return mMetrics.mItemBindNanos + mMetrics.mHeaderBindNanos;
+            case PHASE_DRAW:
+                return mMetrics.mDrawNanos;
+            case PHASE_MEASURE:
+                return mMetrics.mMeasureNanos;
+            case PHASE_REGROUP:
+                return mMetrics.mRegroupNanos;
+            case PHASE_STICKY_SWAP:
+                return mMetrics.mStickiedHeaderSwapNanos;
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+    }
+
+    /**
+     * @return The PHASE_ constants of the phases that ran in the slow frame,
+     *         or'ed together.
+     */
+    public int getPhases() {
+        int phases = 0;
+        if (mMetrics.mItemBinds + mMetrics.mHeaderBinds + mMetrics.mFillerBinds > 0) {
+            phases |= PHASE_BIND;
+        }
+        if (mMetrics.mMeasureNanos > 0) {
+            phases |= PHASE_MEASURE;
+        }
+        if (mMetrics.mDrawNanos > 0) {
+            phases |= PHASE_DRAW;
+        }
+        if (mMetrics.mStickiedHeaderSwaps > 0) {
+            phases |= PHASE_STICKY_SWAP;
+        }
+        if (mMetrics.mRegroups > 0 || mMetrics.mRegroupNanos > 0) {
+            phases |= PHASE_REGROUP;
+        }
+        return phases;
+    }
+
+    /**
+     * Get the id of a section whose header was bound or stickied in the slow
+     * frame. See {@link StickyGridHeadersFrameMetrics#getSectionId(int)}.
+     */
+    public long getSectionId(int index) {
+        return mMetrics.getSectionId(index);
+    }
+
+    public int getSectionIdCount() {
+        return mMetrics.getSectionIdCount();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StickyGridHeadersJankRecord{frameTimeNanos=");
+        sb.append(mFrameTimeNanos).append(" frameIntervalNanos=").append(mFrameIntervalNanos)
+                .append(" budgetNanos=").append(mBudgetNanos).append(" phases={");
+        int phases = getPhases();
+        boolean first = true;
+        for (int i = 0; i < sPhaseNames.length; i++) {
+            int phase = 1 << i;
+            if ((phases & phase) == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(' ');
+            }
+            first = false;
+            sb.append(sPhaseNames[i]).append('=').append(getPhaseNanos(phase));
+        }
+        sb.append("} sectionIds=[");
+        for (int i = 0, n = getSectionIdCount(); i < n; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(getSectionId(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    void set(long frameTimeNanos, long frameIntervalNanos, long budgetNanos,
+            StickyGridHeadersFrameMetrics totals, StickyGridHeadersFrameMetrics since) {
+        mFrameTimeNanos = frameTimeNanos;
+        mFrameIntervalNanos = frameIntervalNanos;
+        mBudgetNanos = budgetNanos;
+        mMetrics.setDifference(totals, since);
+    }
+}
@@ -86,4 +86,7 @@ public class StickyGridHeadersListAdapterWrapper extends BaseAdapter implements
         return mDelegate.hasStableIds();
     }
 
+    ListAdapter getWrappedAdapter() {
+        return mDelegate;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * Open addressing hash map from long keys to non-negative int values. Keys and
+ * values are held in two parallel arrays so lookups and inserts do not box or
+ * allocate entries.
+ *
+ * @author Tonic Artos
+ */
+final class StickyGridHeadersLongIntMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mKeys;
+
+    private int mSize;
+
+    /**
+     * Values offset by one so that zero marks an empty slot.
+     */
+    private int[] mValues;
+
+    StickyGridHeadersLongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of keys to size the table for.
+     */
+    StickyGridHeadersLongIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    /**
+     * @param key Key to look up.
+     * @param missingValue Value to return if the key is not mapped.
+     * @return The value mapped to key, or missingValue.
+     */
+    int get(long key, int missingValue) {
+        int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int value = mValues[slot];
+            if (value == 0) {
+                return missingValue;
+            }
+            if (mKeys[slot] == key) {
+                return value - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param key Key to map.
+     * @param value Non-negative value to map to key.
+     */
+    void put(long key, int value) {
+        if ((mSize + 1) * 2 > mKeys.length) {
+            rehash(mKeys.length << 1);
+        }
+        if (insert(mKeys, mValues, key, value + 1)) {
+            mSize++;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return true if a new slot was used, false if an existing key was
+     *         updated.
+     */
+    private static boolean insert(long[] keys, int[] values, long key, int storedValue) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = storedValue;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = storedValue;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = new long[capacity];
+        int[] values = new int[capacity];
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mValues[i] != 0) {
+                insert(keys, values, mKeys[i], mValues[i]);
+            }
+        }
+        mKeys = keys;
+        mValues = values;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseBooleanArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapter for large data sets whose section sizes are known up front but whose
+ * items are loaded in pages, such as from a database. Pages are loaded on a
+ * background executor when cells near them are shown, and a bounded number of
+ * the most recently used pages is kept. Until its page has loaded an item is
+ * null and should be shown as a placeholder. Once loaded, only the showing
+ * cells in the page are bound again.
+ * 
+ * @author Tonic Artos
+ * @param <T> Type of the items.
+ */
+public abstract class StickyGridHeadersPagedAdapter<T> extends BaseAdapter implements
+        StickyGridHeadersBaseAdapter {
+    private int mCount;
+
+    private int[] mCounts = new int[0];
+
+    private final Executor mExecutor;
+
+    /**
+     * Incremented when the loaded pages are dropped so loads already in flight
+     * are ignored.
+     */
+    private int mGeneration;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Slot of the page last looked up, or -1. Binds mostly hit the same page
+     * in a row, so this saves scanning the slots.
+     */
+    private int mLastSlot = -1;
+
+    private final SparseBooleanArray mLoading = new SparseBooleanArray();
+
+    private final int mPageSize;
+
+    private int mPrefetchDistance;
+
+    private RangeObserver mRangeObserver;
+
+    /**
+     * Items of the page in each slot.
+     */
+    private final Object[] mSlotItems;
+
+    /**
+     * Index of the page in each slot, or -1 if the slot is empty.
+     */
+    private final int[] mSlotPages;
+
+    /**
+     * Value of {@link #mUseClock} when each slot was last used, or 0 if the
+     * slot is empty. The slot with the lowest value is evicted first.
+     */
+    private final long[] mSlotUses;
+
+    private long mUseClock;
+
+    /**
+     * @param executor Executor to load pages on.
+     * @param pageSize Number of items in each page.
+     * @param maxPages Number of pages to keep loaded. This should cover at
+     *            least a screen of cells and the pages either side.
+     */
+    public StickyGridHeadersPagedAdapter(Executor executor, int pageSize, int maxPages) {
+        mExecutor = executor;
+        mPageSize = Math.max(pageSize, 1);
+        mPrefetchDistance = mPageSize / 2;
+
+        // Pages are kept in a few slots scanned linearly, so finding a page
+        // while binding boxes nothing.
+        int numSlots = Math.max(maxPages, 1);
+        mSlotPages = new int[numSlots];
+        mSlotItems = new Object[numSlots];
+        mSlotUses = new long[numSlots];
+        clearPages();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getCountForHeader(int header) {
+        return mCounts[header];
+    }
+
+    /**
+     * Get an item if its page is loaded, otherwise start loading the page.
+     * 
+     * @param position Position of the item.
+     * @return The item, or null if it has not been loaded yet.
+     */
+    @Override
+    public T getItem(int position) {
+        int page = position / mPageSize;
+        List<T> items = getPage(page);
+        if (items == null) {
+            requestPage(page);
+            return null;
+        }
+        int index = position - page * mPageSize;
+        return index < items.size() ? items.get(index) : null;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public int getNumHeaders() {
+        return mCounts.length;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        T item = getItem(position);
+
+        // Load the neighbouring page before it is scrolled to.
+        int page = position / mPageSize;
+        int offset = position - page * mPageSize;
+        if (offset < mPrefetchDistance && page > 0) {
+            requestPage(page - 1);
+        }
+        if (offset >= mPageSize - mPrefetchDistance) {
+            requestPage(page + 1);
+        }
+
+        return getItemView(position, item, convertView, parent);
+    }
+
+    /**
+     * Drop every loaded page, for when the underlying data has changed. Pages
+     * are loaded again as their cells are shown.
+     */
+    public void invalidatePages() {
+        mGeneration++;
+        clearPages();
+        mLoading.clear();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @param position Position of an item.
+     * @return true if the item's page is loaded.
+     */
+    public boolean isLoaded(int position) {
+        return findSlot(position / mPageSize) >= 0;
+    }
+
+    /**
+     * Set the number of items in each section. Loaded pages are dropped.
+     * 
+     * @param counts Number of items in each section.
+     */
+    public void setSectionCounts(int[] counts) {
+        mCounts = counts.clone();
+        int count = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            count += mCounts[i];
+        }
+        mCount = count;
+        invalidatePages();
+    }
+
+    /**
+     * Set how close to the end of a page a cell must be for the next page to
+     * be loaded. Defaults to half a page.
+     * 
+     * @param items Distance in items.
+     */
+    public void setPrefetchDistance(int items) {
+        mPrefetchDistance = Math.max(Math.min(items, mPageSize), 0);
+    }
+
+    private void clearPages() {
+        Arrays.fill(mSlotPages, -1);
+        Arrays.fill(mSlotItems, null);
+        Arrays.fill(mSlotUses, 0);
+        mLastSlot = -1;
+    }
+
+    /**
+     * @return Slot holding a page, or -1 if the page is not loaded.
+     */
+    private int findSlot(int page) {
+        if (mLastSlot >= 0 && mSlotPages[mLastSlot] == page) {
+            return mLastSlot;
+        }
+        for (int i = 0; i < mSlotPages.length; i++) {
+            if (mSlotPages[i] == page) {
+                mLastSlot = i;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Items of a loaded page, or null if the page is not loaded.
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> getPage(int page) {
+        int slot = findSlot(page);
+        if (slot < 0) {
+            return null;
+        }
+        mSlotUses[slot] = ++mUseClock;
+        return (List<T>)mSlotItems[slot];
+    }
+
+    private void publishPage(int generation, int page, List<T> items) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        mLoading.delete(page);
+        if (items == null) {
+            // Nothing loaded, so try again when the page is next shown.
+            return;
+        }
+        putPage(page, items);
+        if (mRangeObserver != null) {
+            mRangeObserver.onItemRangeChanged(page * mPageSize, items.size());
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Keep a page, in place of the least recently used page if every slot is
+     * taken.
+     */
+    private void putPage(int page, List<T> items) {
+        int slot = findSlot(page);
+        if (slot < 0) {
+            // Empty slots have never been used, so they are taken first.
+            slot = 0;
+            for (int i = 1; i < mSlotUses.length; i++) {
+                if (mSlotUses[i] < mSlotUses[slot]) {
+                    slot = i;
+                }
+            }
+        }
+        mSlotPages[slot] = page;
+        mSlotItems[slot] = items;
+        mSlotUses[slot] = ++mUseClock;
+        mLastSlot = slot;
+    }
+
+    private void requestPage(final int page) {
+        final int start = page * mPageSize;
+        if (start >= mCount || mLoading.get(page) || findSlot(page) >= 0) {
+            return;
+        }
+        mLoading.put(page, true);
+
+        final int generation = mGeneration;
+        final int count = Math.min(mPageSize, mCount - start);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<T> items = loadPage(start, count);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishPage(generation, page, items);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Get a View that displays an item, or a placeholder for it while its page
+     * is loading. The view is bound again once the page has loaded.
+     * 
+     * @param position Position of the item.
+     * @param item The item, or null if it has not been loaded yet.
+     * @param convertView The old view to reuse, if possible.
+     * @param parent The parent that this view will eventually be attached to.
+     * @return A View corresponding to the item or its placeholder.
+     */
+    protected abstract View getItemView(int position, T item, View convertView,
+            ViewGroup parent);
+
+    /**
+     * Load a page of items. Called on the executor, not the UI thread.
+     * 
+     * @param start Position of the first item in the page.
+     * @param count Number of items to load.
+     * @return The items in order, or null if they could not be loaded.
+     */
+    protected abstract List<T> loadPage(int start, int count);
+
+    void setRangeObserver(RangeObserver observer) {
+        mRangeObserver = observer;
+    }
+
+    /**
+     * Receives the ranges of items that have been loaded, so that only their
+     * cells are bound again.
+     */
+    interface RangeObserver {
+        void onItemRangeChanged(int positionStart, int itemCount);
+    }
+}
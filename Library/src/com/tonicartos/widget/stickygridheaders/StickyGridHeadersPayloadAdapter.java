@@ -0,0 +1,62 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import android.view.View;
+
+/**
+ * Optional interface for a {@link StickyGridHeadersBaseAdapter} or
+ * {@link StickyGridHeadersSimpleAdapter} that can patch a bound view in place
+ * with a change payload, instead of binding it again from scratch. See
+ * {@link StickyGridHeadersGridView#notifyItemChanged(int, Object)} and
+ * {@link StickyGridHeadersGridView#notifyHeaderChanged(int, Object)}.
+ * 
+ * @author Tonic Artos
+ */
+public interface StickyGridHeadersPayloadAdapter {
+    /**
+     * Apply a change to a header view that is showing.
+     * 
+     * @param position
+     *            The position passed to getHeaderView(). For a
+     *            {@link StickyGridHeadersBaseAdapter} this is the position of
+     *            the header within the adapter's header data set. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the position of
+     *            the first item with the header.
+     * @param view
+     *            The header view, as returned by getHeaderView().
+     * @param payload
+     *            The payload passed with the change.
+     * @return true if the change was applied, false to have the header bound
+     *         with getHeaderView() instead.
+     */
+    boolean bindHeaderPayload(int position, View view, Object payload);
+
+    /**
+     * Apply a change to an item view that is showing.
+     * 
+     * @param position
+     *            The position of the item within the adapter's data set.
+     * @param view
+     *            The item view, as returned by getView().
+     * @param payload
+     *            The payload passed with the change.
+     * @return true if the change was applied, false to have the item bound
+     *         with getView() instead.
+     */
+    boolean bindItemPayload(int position, View view, Object payload);
+}
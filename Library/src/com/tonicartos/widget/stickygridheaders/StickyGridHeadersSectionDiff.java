@@ -0,0 +1,132 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import java.util.Arrays;
+
+/**
+ * Differences between two snapshots of an adapter's sections and items, taken
+ * before and after a data set change.
+ *
+ * @author Tonic Artos
+ */
+final class StickyGridHeadersSectionDiff {
+    private StickyGridHeadersLongIntMap mNewSections;
+
+    private final Snapshot mNewSnapshot;
+
+    private final Snapshot mOldSnapshot;
+
+    StickyGridHeadersSectionDiff(Snapshot oldSnapshot, Snapshot newSnapshot) {
+        mOldSnapshot = oldSnapshot;
+        mNewSnapshot = newSnapshot;
+    }
+
+    /**
+     * Find where a section has moved to.
+     *
+     * @param oldSection Index of the section before the change.
+     * @return Index of the section with the same id after the change, or -1 if
+     *         there is none.
+     */
+    int findNewSection(int oldSection) {
+        if (oldSection < 0 || oldSection >= mOldSnapshot.mSectionIds.length) {
+            return -1;
+        }
+
+        if (mNewSections == null) {
+            long[] sectionIds = mNewSnapshot.mSectionIds;
+            mNewSections = new StickyGridHeadersLongIntMap(sectionIds.length);
+            for (int i = sectionIds.length - 1; i >= 0; i--) {
+                // Keep the first section with an id.
+                mNewSections.put(sectionIds[i], i);
+            }
+        }
+        return mNewSections.get(mOldSnapshot.mSectionIds[oldSection], -1);
+    }
+
+    /**
+     * @return true if any section, shown or not, has a different id than
+     *         before the change.
+     */
+    boolean hasChangedSections() {
+        return !Arrays.equals(mOldSnapshot.mSectionIds, mNewSnapshot.mSectionIds);
+    }
+
+    /**
+     * @param position Adapter position of an item after the change.
+     * @return true if a different item, or no item, was at the position before
+     *         the change, or if the position was not showing both before and
+     *         after the change.
+     */
+    boolean isItemChanged(int position) {
+        int oldIndex = position - mOldSnapshot.mFirstItem;
+        int newIndex = position - mNewSnapshot.mFirstItem;
+        if (oldIndex < 0 || oldIndex >= mOldSnapshot.mItemIds.length || newIndex < 0
+                || newIndex >= mNewSnapshot.mItemIds.length) {
+            // Not showing in both snapshots, so the old id is not known.
+            return true;
+        }
+        return mOldSnapshot.mItemIds[oldIndex] != mNewSnapshot.mItemIds[newIndex];
+    }
+
+    /**
+     * @return true if every section has the same number of items as before
+     *         the change, so the grid's layout is unchanged.
+     */
+    boolean isLayoutUnchanged() {
+        return Arrays.equals(mOldSnapshot.mCounts, mNewSnapshot.mCounts);
+    }
+
+    /**
+     * @param section Index of a section after the change.
+     * @return true if a different section, or no section, was at the index
+     *         before the change.
+     */
+    boolean isSectionChanged(int section) {
+        long[] oldIds = mOldSnapshot.mSectionIds;
+        return section >= oldIds.length || oldIds[section] != mNewSnapshot.mSectionIds[section];
+    }
+
+    /**
+     * Section ids, section sizes and the ids of the showing items of an adapter
+     * at one point in time. Only showing items can be rebound in place, so the
+     * ids of the rest are not read.
+     */
+    static final class Snapshot {
+        private final int[] mCounts;
+
+        private final int mFirstItem;
+
+        private final long[] mItemIds;
+
+        private final long[] mSectionIds;
+
+        /**
+         * @param counts Number of items in each section.
+         * @param sectionIds Id of each section.
+         * @param firstItem Adapter position of the first showing item.
+         * @param itemIds Id of each showing item, from firstItem on.
+         */
+        Snapshot(int[] counts, long[] sectionIds, int firstItem, long[] itemIds) {
+            mCounts = counts;
+            mSectionIds = sectionIds;
+            mFirstItem = firstItem;
+            mItemIds = itemIds;
+        }
+    }
+}
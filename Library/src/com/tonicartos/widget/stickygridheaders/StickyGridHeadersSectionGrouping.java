@@ -0,0 +1,181 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import java.util.Arrays;
+
+/**
+ * Sections generated from the header ids of a simple adapter. Each section's
+ * header id, item count and reference position (the first item with that
+ * header id) are held in parallel arrays.
+ *
+ * @author Tonic Artos
+ */
+final class StickyGridHeadersSectionGrouping {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] mCounts;
+
+    private long[] mHeaderIds;
+
+    private int[] mRefPositions;
+
+    private int mSize;
+
+    StickyGridHeadersSectionGrouping() {
+        this(MIN_CAPACITY);
+    }
+
+    private StickyGridHeadersSectionGrouping(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mCounts = new int[capacity];
+        mHeaderIds = new long[capacity];
+        mRefPositions = new int[capacity];
+    }
+
+    /**
+     * Group items by header id. Items sharing a header id are counted in the
+     * same section wherever they are.
+     *
+     * @param headerIds Header id of each item.
+     * @return The sections, in order of first appearance.
+     */
+    static StickyGridHeadersSectionGrouping group(long[] headerIds) {
+        StickyGridHeadersSectionGrouping grouping = new StickyGridHeadersSectionGrouping();
+        StickyGridHeadersLongIntMap mapping = new StickyGridHeadersLongIntMap();
+
+        for (int i = 0; i < headerIds.length; i++) {
+            long headerId = headerIds[i];
+            int section = mapping.get(headerId, -1);
+            if (section == -1) {
+                section = grouping.addSection(headerId, i);
+                mapping.put(headerId, section);
+            }
+            grouping.mCounts[section]++;
+        }
+
+        return grouping;
+    }
+
+    /**
+     * Append a section, or extend the last section if it has the same header
+     * id. Used to group runs of contiguous items.
+     *
+     * @param headerId Header id of the item.
+     * @param position Position of the item.
+     */
+    void appendRun(long headerId, int position) {
+        int last = mSize - 1;
+        if (last < 0 || mHeaderIds[last] != headerId) {
+            last = addSection(headerId, position);
+        }
+        mCounts[last]++;
+    }
+
+    /**
+     * @return A copy of the section counts, trimmed to the number of sections.
+     */
+    int[] copyCounts() {
+        return Arrays.copyOf(mCounts, mSize);
+    }
+
+    /**
+     * Find the section containing an item. Assumes items sharing a header id
+     * are contiguous.
+     *
+     * @param position Position of the item.
+     * @return Index of the section.
+     */
+    int findSection(int position) {
+        int lo = 0;
+        int hi = mSize - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mRefPositions[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    int getCount(int section) {
+        return mCounts[section];
+    }
+
+    long getHeaderId(int section) {
+        return mHeaderIds[section];
+    }
+
+    int getRefPosition(int section) {
+        return mRefPositions[section];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Replace a run of sections with another grouping, shifting the reference
+     * positions of the sections after the run.
+     *
+     * @param first First section to replace.
+     * @param last Last section to replace, inclusive.
+     * @param replacement Sections to put in place of the run.
+     * @param delta Offset to apply to the positions of trailing sections.
+     * @return A new grouping. This grouping is left unchanged.
+     */
+    StickyGridHeadersSectionGrouping splice(int first, int last,
+            StickyGridHeadersSectionGrouping replacement, int delta) {
+        int numReplaced = replacement.mSize;
+        int numTrailing = mSize - last - 1;
+        int size = first + numReplaced + numTrailing;
+
+        StickyGridHeadersSectionGrouping spliced = new StickyGridHeadersSectionGrouping(size);
+        spliced.copyFrom(this, 0, 0, first, 0);
+        spliced.copyFrom(replacement, 0, first, numReplaced, 0);
+        spliced.copyFrom(this, last + 1, first + numReplaced, numTrailing, delta);
+        spliced.mSize = size;
+        return spliced;
+    }
+
+    private int addSection(long headerId, int refPosition) {
+        if (mSize == mCounts.length) {
+            int capacity = mSize << 1;
+            mCounts = Arrays.copyOf(mCounts, capacity);
+            mHeaderIds = Arrays.copyOf(mHeaderIds, capacity);
+            mRefPositions = Arrays.copyOf(mRefPositions, capacity);
+        }
+        mHeaderIds[mSize] = headerId;
+        mRefPositions[mSize] = refPosition;
+        mCounts[mSize] = 0;
+        return mSize++;
+    }
+
+    private void copyFrom(StickyGridHeadersSectionGrouping source, int sourceStart, int start,
+            int length, int delta) {
+        System.arraycopy(source.mCounts, sourceStart, mCounts, start, length);
+        System.arraycopy(source.mHeaderIds, sourceStart, mHeaderIds, start, length);
+        System.arraycopy(source.mRefPositions, sourceStart, mRefPositions, start, length);
+        if (delta != 0) {
+            for (int i = start; i < start + length; i++) {
+                mRefPositions[i] += delta;
+            }
+        }
+    }
+}
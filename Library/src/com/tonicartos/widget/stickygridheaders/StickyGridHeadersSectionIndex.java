@@ -0,0 +1,246 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * Immutable prefix-sum table of the padded layout GridView sees for a set of
+ * sections. Each section occupies a full header row, its items, and enough
+ * filler to complete its last row. The table is built once per data or column
+ * change and answers position queries with a binary search.
+ *
+ * @author Tonic Artos
+ */
+final class StickyGridHeadersSectionIndex {
+    static final int POSITION_FILLER = -0x01;
+
+    static final int POSITION_HEADER = -0x02;
+
+    static final int POSITION_HEADER_FILLER = -0x03;
+
+    private final int mCount;
+
+    private final int[] mCounts;
+
+    private final int[] mHeaderPositions;
+
+    private final int[] mItemPositions;
+
+    private final int mNumColumns;
+
+    /**
+     * @param counts Number of items in each section. The index takes ownership
+     *            of the array.
+     * @param numColumns Number of columns the grid is laid out with.
+     */
+    StickyGridHeadersSectionIndex(int[] counts, int numColumns) {
+        // Guard against divide by zero when the column count is not yet known.
+        mNumColumns = numColumns < 1 ? 1 : numColumns;
+
+        int numSections = counts.length;
+        mCounts = counts;
+        mHeaderPositions = new int[numSections];
+        mItemPositions = new int[numSections];
+
+        int position = 0;
+        int itemPosition = 0;
+        for (int i = 0; i < numSections; i++) {
+            int sectionCount = counts[i];
+            mHeaderPositions[i] = position;
+            mItemPositions[i] = itemPosition;
+
+            // Pad with space for header and trailing filler in header group.
+            position += mNumColumns + sectionCount + unFilledSpaces(sectionCount, mNumColumns);
+            itemPosition += sectionCount;
+        }
+        mCount = position;
+    }
+
+    /**
+     * Pack a section and an adapter position, or one of the POSITION_ constants
+     * for fake entries, into a single long.
+     */
+    static long pack(int position, int section) {
+        return ((long)section << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    static int unpackPosition(long translated) {
+        return (int)translated;
+    }
+
+    static int unpackSection(long translated) {
+        return (int)(translated >> 32);
+    }
+
+    /**
+     * Counts the number of items that would be need to fill out the last row of
+     * a section.
+     *
+     * @param sectionCount Number of items in the section.
+     * @param numColumns Number of columns in the grid.
+     * @return The count of unfilled spaces in the last row.
+     */
+    static int unFilledSpaces(int sectionCount, int numColumns) {
+        if (numColumns < 1) {
+            return 0;
+        }
+
+        int remainder = sectionCount % numColumns;
+        return remainder == 0 ? 0 : numColumns - remainder;
+    }
+
+    /**
+     * @return Total number of padded positions, including headers and fillers.
+     */
+    int getCount() {
+        return mCount;
+    }
+
+    int getCountForSection(int section) {
+        return mCounts[section];
+    }
+
+    /**
+     * Translate an adapter position to the padded GridView position showing
+     * it. This is the inverse of {@link #translatePosition(int)} for items.
+     *
+     * @param itemPosition Unwrapped adapter position of an item.
+     * @return Padded position of the item, or -1 if there is no such item.
+     */
+    int getGridPosition(int itemPosition) {
+        int section = getSectionForItemPosition(itemPosition);
+        if (section < 0) {
+            return -1;
+        }
+        return mHeaderPositions[section] + mNumColumns + itemPosition - mItemPositions[section];
+    }
+
+    /**
+     * @return Padded position of the header cell for the given section.
+     */
+    int getHeaderPosition(int section) {
+        return mHeaderPositions[section];
+    }
+
+    /**
+     * @return Unwrapped adapter position of the first item in the given section.
+     */
+    int getItemPosition(int section) {
+        return mItemPositions[section];
+    }
+
+    int getNumColumns() {
+        return mNumColumns;
+    }
+
+    /**
+     * @return An index of the same sections laid out with the given number of
+     *         columns.
+     */
+    StickyGridHeadersSectionIndex withNumColumns(int numColumns) {
+        if (Math.max(numColumns, 1) == mNumColumns) {
+            return this;
+        }
+        // The counts are never written to after construction, so can be shared.
+        return new StickyGridHeadersSectionIndex(mCounts, numColumns);
+    }
+
+    int getNumSections() {
+        return mCounts.length;
+    }
+
+    /**
+     * Find the section that contains a padded position.
+     *
+     * @param position Padded position within the grid.
+     * @return Index of the section, or -1 if there are no sections.
+     */
+    int getSectionForPosition(int position) {
+        int lo = 0;
+        int hi = mHeaderPositions.length - 1;
+        if (hi < 0) {
+            return -1;
+        }
+
+        // Find the last section whose header starts at or before position.
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mHeaderPositions[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the section that contains an item.
+     *
+     * @param itemPosition Unwrapped adapter position of an item.
+     * @return Index of the section, or -1 if there is no such item.
+     */
+    int getSectionForItemPosition(int itemPosition) {
+        int hi = mItemPositions.length - 1;
+        if (itemPosition < 0 || hi < 0 || itemPosition >= mItemPositions[hi] + mCounts[hi]) {
+            return -1;
+        }
+
+        // Find the last section whose items start at or before the position.
+        // Empty sections share their start with the next section, so this
+        // always lands on the section holding the item.
+        int lo = 0;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mItemPositions[mid] <= itemPosition) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Translate a padded GridView position to the section and adapter position
+     * it shows. Must not be called on an index without sections.
+     *
+     * @param position Padded position within the grid.
+     * @return Section and adapter position packed with {@link #pack(int, int)}.
+     */
+    long translatePosition(int position) {
+        int section = getSectionForPosition(position);
+        int place = position - mHeaderPositions[section];
+
+        // Skip past fake items making space for header in front of sections.
+        if (place == 0) {
+            // Position is first column where header will be.
+            return pack(POSITION_HEADER, section);
+        }
+        place -= mNumColumns;
+        if (place < 0) {
+            // Position is a fake so return null.
+            return pack(POSITION_HEADER_FILLER, section);
+        }
+
+        if (place < mCounts[section]) {
+            return pack(mItemPositions[section] + place, section);
+        }
+
+        // Position is in the end of section row filler.
+        return pack(POSITION_FILLER, section);
+    }
+}
@@ -21,11 +21,6 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 /**
  * Adapter wrapper to insert extra views and otherwise hack around GridView to
  * add sections and headers.
@@ -33,10 +28,17 @@ import java.util.Map;
  * @author Tonic Artos
  */
 public class StickyGridHeadersSimpleAdapterWrapper extends BaseAdapter implements
-        StickyGridHeadersBaseAdapter {
+        StickyGridHeadersBaseAdapter, StickyGridHeadersHeaderViewTypeAdapter,
+        StickyGridHeadersPayloadAdapter, StickyGridHeadersStableSectionIdAdapter {
+    private boolean mDeferRegroup;
+
     private StickyGridHeadersSimpleAdapter mDelegate;
 
-    private HeaderData[] mHeaders;
+    private StickyGridHeadersSectionGrouping mHeaders;
+
+    private StickyGridHeadersFrameMetrics mMetrics;
+
+    private boolean mRegroupPending;
 
     public StickyGridHeadersSimpleAdapterWrapper(StickyGridHeadersSimpleAdapter adapter) {
         mDelegate = adapter;
@@ -44,6 +46,24 @@ public class StickyGridHeadersSimpleAdapterWrapper extends BaseAdapter implement
         mHeaders = generateHeaderList(adapter);
     }
 
+    @Override
+    public boolean bindHeaderPayload(int position, View view, Object payload) {
+        if (mDelegate instanceof StickyGridHeadersPayloadAdapter) {
+            return ((StickyGridHeadersPayloadAdapter)mDelegate).bindHeaderPayload(
+                    mHeaders.getRefPosition(position), view, payload);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean bindItemPayload(int position, View view, Object payload) {
+        if (mDelegate instanceof StickyGridHeadersPayloadAdapter) {
+            return ((StickyGridHeadersPayloadAdapter)mDelegate).bindItemPayload(position, view,
+                    payload);
+        }
+        return false;
+    }
+
     @Override
     public int getCount() {
         return mDelegate.getCount();
@@ -51,12 +71,29 @@ public class StickyGridHeadersSimpleAdapterWrapper extends BaseAdapter implement
 
     @Override
     public int getCountForHeader(int position) {
-        return mHeaders[position].getCount();
+        return mHeaders.getCount(position);
     }
 
     @Override
     public View getHeaderView(int position, View convertView, ViewGroup parent) {
-        return mDelegate.getHeaderView(mHeaders[position].getRefPosition(), convertView, parent);
+        return mDelegate.getHeaderView(mHeaders.getRefPosition(position), convertView, parent);
+    }
+
+    @Override
+    public int getHeaderViewType(int position) {
+        if (mDelegate instanceof StickyGridHeadersHeaderViewTypeAdapter) {
+            return ((StickyGridHeadersHeaderViewTypeAdapter)mDelegate)
+                    .getHeaderViewType(mHeaders.getRefPosition(position));
+        }
+        return 0;
+    }
+
+    @Override
+    public int getHeaderViewTypeCount() {
+        if (mDelegate instanceof StickyGridHeadersHeaderViewTypeAdapter) {
+            return ((StickyGridHeadersHeaderViewTypeAdapter)mDelegate).getHeaderViewTypeCount();
+        }
+        return 1;
     }
 
     @Override
@@ -76,7 +113,7 @@ public class StickyGridHeadersSimpleAdapterWrapper extends BaseAdapter implement
 
     @Override
     public int getNumHeaders() {
-        return mHeaders.length;
+        return mHeaders.size();
     }
 
     @Override
@@ -84,6 +121,15 @@ public class StickyGridHeadersSimpleAdapterWrapper extends BaseAdapter implement
         return mDelegate.getView(position, convertView, parent);
     }
 
+    @Override
+    public long getSectionId(int position) {
+        if (mDelegate instanceof StickyGridHeadersStableSectionIdAdapter) {
+            return ((StickyGridHeadersStableSectionIdAdapter)mDelegate).getSectionId(mHeaders
+                    .getRefPosition(position));
+        }
+        return mHeaders.getHeaderId(position);
+    }
+
     @Override
     public int getViewTypeCount() {
         return mDelegate.getViewTypeCount();
@@ -94,58 +140,191 @@ public class StickyGridHeadersSimpleAdapterWrapper extends BaseAdapter implement
         return mDelegate.hasStableIds();
     }
 
-    protected HeaderData[] generateHeaderList(StickyGridHeadersSimpleAdapter adapter) {
-        Map<Long, HeaderData> mapping = new HashMap<Long, HeaderData>();
-        List<HeaderData> headers = new ArrayList<HeaderData>();
+    @Override
+    public boolean hasStableSectionIds() {
+        return mDelegate instanceof StickyGridHeadersStableSectionIdAdapter
+                && ((StickyGridHeadersStableSectionIdAdapter)mDelegate).hasStableSectionIds();
+    }
 
-        for (int i = 0; i < adapter.getCount(); i++) {
-            long headerId = adapter.getHeaderId(i);
-            HeaderData headerData = mapping.get(headerId);
-            if (headerData == null) {
-                headerData = new HeaderData(i);
-                headers.add(headerData);
-            }
-            headerData.incrementCount();
-            mapping.put(headerId, headerData);
+    /**
+     * Update the headers for items inserted into the wrapped adapter, and
+     * notify observers. Only the sections either side of the insertion are
+     * regrouped, so appending a page to a large adapter does not rescan it.
+     * <p>
+     * Call this instead of notifyDataSetChanged() on the wrapped adapter.
+     * Items sharing a header id are assumed to be contiguous, as they must be
+     * to display as a single section.
+     * </p>
+     * 
+     * @param positionStart Position of the first inserted item.
+     * @param itemCount Number of items inserted.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+        if (mRegroupPending) {
+            // A full regroup is already on its way.
+            notifyDataSetChanged();
+            return;
         }
 
-        return headers.toArray(new HeaderData[headers.size()]);
+        long start = startRegroup();
+        int oldCount = mDelegate.getCount() - itemCount;
+        if (mHeaders.size() == 0 || oldCount <= 0) {
+            mHeaders = generateHeaderList(mDelegate);
+        } else {
+            int first = mHeaders.findSection(positionStart > 0 ? positionStart - 1 : 0);
+            int last = mHeaders.findSection(Math.min(positionStart, oldCount - 1));
+            regroupHeaders(first, last, itemCount);
+        }
+        endRegroup(start);
+        notifyDataSetChanged();
     }
 
-    private final class DataSetObserverExtension extends DataSetObserver {
-        @Override
-        public void onChanged() {
-            mHeaders = generateHeaderList(mDelegate);
+    /**
+     * Update the headers for items removed from the wrapped adapter, and
+     * notify observers. Only the sections either side of the removed range
+     * are regrouped.
+     * <p>
+     * Call this instead of notifyDataSetChanged() on the wrapped adapter.
+     * Items sharing a header id are assumed to be contiguous, as they must be
+     * to display as a single section.
+     * </p>
+     * 
+     * @param positionStart Position the first removed item was at.
+     * @param itemCount Number of items removed.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+        if (mRegroupPending) {
+            // A full regroup is already on its way.
             notifyDataSetChanged();
+            return;
         }
 
-        @Override
-        public void onInvalidated() {
+        long start = startRegroup();
+        int oldCount = mDelegate.getCount() + itemCount;
+        if (mHeaders.size() == 0 || mDelegate.getCount() == 0) {
             mHeaders = generateHeaderList(mDelegate);
-            notifyDataSetInvalidated();
+        } else {
+            int first = mHeaders.findSection(positionStart > 0 ? positionStart - 1 : 0);
+            int last = mHeaders.findSection(Math.min(positionStart + itemCount, oldCount - 1));
+            regroupHeaders(first, last, -itemCount);
         }
+        endRegroup(start);
+        notifyDataSetChanged();
     }
 
-    private class HeaderData {
-        private int mCount;
+    StickyGridHeadersSectionGrouping generateHeaderList(StickyGridHeadersSimpleAdapter adapter) {
+        return generateHeaderList(snapshotHeaderIds(adapter));
+    }
+
+    /**
+     * Group a snapshot of header ids into headers. Touches no adapter state so
+     * it is safe to call from a background thread.
+     */
+    StickyGridHeadersSectionGrouping generateHeaderList(long[] headerIds) {
+        return StickyGridHeadersSectionGrouping.group(headerIds);
+    }
+
+    StickyGridHeadersSimpleAdapter getWrappedAdapter() {
+        return mDelegate;
+    }
 
-        private int mRefPosition;
+    boolean isRegroupPending() {
+        return mRegroupPending;
+    }
 
-        public HeaderData(int refPosition) {
-            mRefPosition = refPosition;
-            mCount = 0;
+    /**
+     * Stop regrouping on data set changes and leave it to the owner of this
+     * wrapper, which will call
+     * {@link #setHeaders(StickyGridHeadersSectionGrouping)} when done.
+     * Turning deferral off regroups straight away if a regroup is pending.
+     */
+    void setDeferRegroup(boolean defer) {
+        mDeferRegroup = defer;
+        if (!defer && mRegroupPending) {
+            setHeaders(generateHeaderList(mDelegate));
         }
+    }
 
-        public int getCount() {
-            return mCount;
+    /**
+     * Add the time spent grouping headers to the given metrics. The grid
+     * counts the regroup itself when it indexes the new sections.
+     */
+    void setFrameMetrics(StickyGridHeadersFrameMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    void setHeaders(StickyGridHeadersSectionGrouping headers) {
+        mHeaders = headers;
+        mRegroupPending = false;
+    }
+
+    long[] snapshotHeaderIds() {
+        return snapshotHeaderIds(mDelegate);
+    }
+
+    private static long[] snapshotHeaderIds(StickyGridHeadersSimpleAdapter adapter) {
+        long[] headerIds = new long[adapter.getCount()];
+        for (int i = 0; i < headerIds.length; i++) {
+            headerIds[i] = adapter.getHeaderId(i);
         }
+        return headerIds;
+    }
 
-        public int getRefPosition() {
-            return mRefPosition;
+    private void endRegroup(long start) {
+        if (mMetrics != null) {
+            mMetrics.mRegroupNanos += System.nanoTime() - start;
         }
+    }
+
+    /**
+     * Regroup the items covered by a run of headers after the run has grown
+     * or shrunk. Headers before the run are kept as is and headers after it
+     * are shifted.
+     * 
+     * @param first First header in the affected run.
+     * @param last Last header in the affected run, inclusive.
+     * @param delta Number of items added to, or removed from, the run.
+     */
+    private void regroupHeaders(int first, int last, int delta) {
+        int start = mHeaders.getRefPosition(first);
+        int end = mHeaders.getRefPosition(last) + mHeaders.getCount(last) + delta;
+
+        StickyGridHeadersSectionGrouping regrouped = new StickyGridHeadersSectionGrouping();
+        for (int i = start; i < end; i++) {
+            regrouped.appendRun(mDelegate.getHeaderId(i), i);
+        }
+        mHeaders = mHeaders.splice(first, last, regrouped, delta);
+    }
 
-        public void incrementCount() {
-            mCount++;
+    private long startRegroup() {
+        return mMetrics != null ? System.nanoTime() : 0;
+    }
+
+    private final class DataSetObserverExtension extends DataSetObserver {
+        @Override
+        public void onChanged() {
+            if (mDeferRegroup) {
+                mRegroupPending = true;
+            } else {
+                long start = startRegroup();
+                setHeaders(generateHeaderList(mDelegate));
+                endRegroup(start);
+            }
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            long start = startRegroup();
+            setHeaders(generateHeaderList(mDelegate));
+            endRegroup(start);
+            notifyDataSetInvalidated();
         }
     }
 }
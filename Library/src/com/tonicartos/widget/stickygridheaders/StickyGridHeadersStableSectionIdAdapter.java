@@ -0,0 +1,56 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+/**
+ * Optional interface for a {@link StickyGridHeadersBaseAdapter} or
+ * {@link StickyGridHeadersSimpleAdapter} whose sections have ids that do not
+ * change when the data set changes.
+ * <p>
+ * If the adapter also has stable item ids, data set changes are diffed
+ * against the previous data set. When the sections keep their sizes, only
+ * visible cells whose item or section id changed are rebound and the grid is
+ * not laid out again. Otherwise the stickied header is kept if its section is
+ * still present. An item or section that keeps its id is assumed to be
+ * unchanged, so use {@link StickyGridHeadersGridView#invalidateViews()} to
+ * show changes to the content of an item or header.
+ * </p>
+ * 
+ * @author Tonic Artos
+ */
+public interface StickyGridHeadersStableSectionIdAdapter {
+    /**
+     * Get the id of a section.
+     * 
+     * @param position
+     *            The position passed to getHeaderView(). For a
+     *            {@link StickyGridHeadersBaseAdapter} this is the position of
+     *            the header within the adapter's header data set. For a
+     *            {@link StickyGridHeadersSimpleAdapter} this is the position of
+     *            the first item with the header.
+     * @return The id of the section.
+     */
+    long getSectionId(int position);
+
+    /**
+     * Indicates whether section ids are stable across changes to the
+     * underlying data.
+     * 
+     * @return True if the same id always refers to the same section.
+     */
+    boolean hasStableSectionIds();
+}
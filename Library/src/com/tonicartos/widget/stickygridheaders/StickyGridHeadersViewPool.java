@@ -0,0 +1,69 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Views created ahead of time, by view type, for the adapter wrapper to use
+ * before creating new ones.
+ * 
+ * @author Tonic Artos
+ */
+final class StickyGridHeadersViewPool {
+    private final SparseArray<ArrayList<View>> mViews = new SparseArray<ArrayList<View>>();
+
+    void put(int viewType, View view) {
+        ArrayList<View> views = mViews.get(viewType);
+        if (views == null) {
+            views = new ArrayList<View>();
+            mViews.put(viewType, views);
+        }
+        views.add(view);
+    }
+
+    int size(int viewType) {
+        ArrayList<View> views = mViews.get(viewType);
+        return views == null ? 0 : views.size();
+    }
+
+    /**
+     * @return A pooled view of the given type, or null if there are none.
+     */
+    View take(int viewType) {
+        ArrayList<View> views = mViews.get(viewType);
+        if (views == null || views.isEmpty()) {
+            return null;
+        }
+        return views.remove(views.size() - 1);
+    }
+
+    /**
+     * @return Every pooled view, removing them from the pool.
+     */
+    ArrayList<View> takeAll() {
+        ArrayList<View> all = new ArrayList<View>();
+        for (int i = 0; i < mViews.size(); i++) {
+            all.addAll(mViews.valueAt(i));
+        }
+        mViews.clear();
+        return all;
+    }
+}
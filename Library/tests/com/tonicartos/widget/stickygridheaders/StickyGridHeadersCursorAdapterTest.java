@@ -0,0 +1,51 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package com.tonicartos.widget.stickygridheaders;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Tonic Artos
+ */
+public class StickyGridHeadersCursorAdapterTest {
+    @Test
+    public void countsThatFitAreKept() {
+        assertFit(new int[] { 2, 3, 4 }, 9, 2, 3, 4);
+    }
+
+    @Test
+    public void extraItemsGoToLastSection() {
+        assertFit(new int[] { 2, 3, 6 }, 11, 2, 3, 4);
+    }
+
+    @Test
+    public void missingItemsAreTrimmedFromTheEnd() {
+        assertFit(new int[] { 2, 1, 0 }, 3, 2, 3, 4);
+    }
+
+    @Test
+    public void noItemsEmptiesEverySection() {
+        assertFit(new int[] { 0, 0 }, 0, 5, 1);
+    }
+
+    private static void assertFit(int[] expected, int itemCount, int... counts) {
+        assertArrayEquals(expected, StickyGridHeadersCursorAdapter.fitCounts(counts, itemCount));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.tonicartos.widget.stickygridheaders;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.MockedStatic;
+
+/**
+ * Checks that touches forwarded to an in-list header are shifted into the
+ * header frame's coordinates on the incoming event and always shifted back.
+ *
+ * @author Tonic Artos
+ */
+public class StickyGridHeadersGridViewTest {
+    private static final int HEADER_POSITION = 3;
+
+    private static final int HEADER_TOP = 120;
+
+    private MotionEvent mEvent;
+
+    private StickyGridHeadersGridView mGridView;
+
+    private View mHeader;
+
+    @Before
+    public void setUp() {
+        View frame = mock(View.class);
+        when(frame.getTop()).thenReturn(HEADER_TOP);
+        mGridView = mock(StickyGridHeadersGridView.class);
+        when(mGridView.getChildAt(HEADER_POSITION)).thenReturn(frame);
+        doCallRealMethod().when(mGridView).dispatchHeaderTouchEvent(any(View.class),
+                any(MotionEvent.class), anyInt());
+        mHeader = mock(View.class);
+        mEvent = mock(MotionEvent.class);
+    }
+
+    @Test
+    public void eventIsShiftedForHeaderAndRestored() {
+        MockedStatic<MotionEvent> events = mockStatic(MotionEvent.class);
+        try {
+            mGridView.dispatchHeaderTouchEvent(mHeader, mEvent, HEADER_POSITION);
+
+            // No event is obtained for the header.
+            events.verifyNoInteractions();
+        } finally {
+            events.close();
+        }
+
+        InOrder order = inOrder(mEvent, mHeader);
+        order.verify(mEvent).offsetLocation(0, -HEADER_TOP);
+        order.verify(mHeader).dispatchTouchEvent(mEvent);
+        order.verify(mEvent).offsetLocation(0, HEADER_TOP);
+        verifyNoMoreInteractions(mEvent);
+    }
+
+    @Test
+    public void eventIsRestoredWhenHeaderThrows() {
+        RuntimeException thrown = new RuntimeException();
+        when(mHeader.dispatchTouchEvent(mEvent)).thenThrow(thrown);
+
+        try {
+            mGridView.dispatchHeaderTouchEvent(mHeader, mEvent, HEADER_POSITION);
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(thrown, e);
+        }
+
+        InOrder order = inOrder(mEvent);
+        order.verify(mEvent).offsetLocation(0, -HEADER_TOP);
+        order.verify(mEvent).offsetLocation(0, HEADER_TOP);
+        verifyNoMoreInteractions(mEvent);
+    }
+}
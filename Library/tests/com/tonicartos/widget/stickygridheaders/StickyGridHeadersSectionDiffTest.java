@@ -0,0 +1,119 @@
+/*
+ Copyright 2013 Tonic Artos
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package com.tonicartos.widget.stickygridheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Tonic Artos
+ */
+public class StickyGridHeadersSectionDiffTest {
+    private static final int NUM_SECTIONS = 20;
+
+    private static final int SECTION_SIZE = 5;
+
+    /**
+     * A section far off screen changes without changing the layout. The diff
+     * must still report a section change, as that is what makes the adapter
+     * wrapper start a new header bind generation so recycled frames for the
+     * section are bound again when it scrolls back in.
+     */
+    @Test
+    public void changedOffScreenSectionIsReported() {
+        long[] newSectionIds = sectionIds();
+        newSectionIds[15] = 1000;
+        StickyGridHeadersSectionDiff diff = new StickyGridHeadersSectionDiff(
+                snapshot(sectionIds()), snapshot(newSectionIds));
+
+        assertTrue(diff.isLayoutUnchanged());
+        assertTrue(diff.hasChangedSections());
+        for (int i = 0; i < NUM_SECTIONS; i++) {
+            assertEquals(i == 15, diff.isSectionChanged(i));
+        }
+    }
+
+    /**
+     * Only the ids of showing items are snapshotted. An item outside either
+     * snapshot's range has no old id to compare, so it must be rebound.
+     */
+    @Test
+    public void itemsAreOnlyComparedWhereShowing() {
+        long[] oldItemIds = new long[] {10, 11, 12, 13};
+        long[] newItemIds = new long[] {12, 13, 99, 15};
+        StickyGridHeadersSectionDiff diff = new StickyGridHeadersSectionDiff(
+                snapshot(sectionIds(), 10, oldItemIds), snapshot(sectionIds(), 12, newItemIds));
+
+        assertTrue(diff.isItemChanged(10));
+        assertTrue(diff.isItemChanged(11));
+        assertFalse(diff.isItemChanged(12));
+        assertFalse(diff.isItemChanged(13));
+        assertTrue(diff.isItemChanged(14));
+        assertTrue(diff.isItemChanged(15));
+    }
+
+    @Test
+    public void movedSectionIsFound() {
+        long[] newSectionIds = sectionIds();
+        newSectionIds[3] = 104;
+        newSectionIds[4] = 103;
+        StickyGridHeadersSectionDiff diff = new StickyGridHeadersSectionDiff(
+                snapshot(sectionIds()), snapshot(newSectionIds));
+
+        assertEquals(4, diff.findNewSection(3));
+        assertEquals(3, diff.findNewSection(4));
+        assertEquals(7, diff.findNewSection(7));
+    }
+
+    @Test
+    public void unchangedSectionsAreNotReported() {
+        StickyGridHeadersSectionDiff diff = new StickyGridHeadersSectionDiff(
+                snapshot(sectionIds()), snapshot(sectionIds()));
+
+        assertTrue(diff.isLayoutUnchanged());
+        assertFalse(diff.hasChangedSections());
+    }
+
+    private static long[] sectionIds() {
+        long[] sectionIds = new long[NUM_SECTIONS];
+        for (int i = 0; i < NUM_SECTIONS; i++) {
+            sectionIds[i] = 100 + i;
+        }
+        return sectionIds;
+    }
+
+    private static StickyGridHeadersSectionDiff.Snapshot snapshot(long[] sectionIds) {
+        long[] itemIds = new long[sectionIds.length * SECTION_SIZE];
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = i;
+        }
+        return snapshot(sectionIds, 0, itemIds);
+    }
+
+    private static StickyGridHeadersSectionDiff.Snapshot snapshot(long[] sectionIds,
+            int firstItem, long[] itemIds) {
+        int[] counts = new int[sectionIds.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = SECTION_SIZE;
+        }
+        return new StickyGridHeadersSectionDiff.Snapshot(counts, sectionIds, firstItem, itemIds);
+    }
+}